@@ -0,0 +1,173 @@
+package com.github.glassmc.kiln.remapper;
+
+import net.fabricmc.mapping.util.EntryTriple;
+import org.objectweb.asm.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Compares the per-owner member tables of {@link HashRemapper} with the {@link EntryTriple} map they replaced.
+ * The trace is every field and method reference in the jar given by -Dkiln.benchmarkJar (a vanilla jar gives
+ * a full-jar remap), every member declared in the jar is mapped. Without a jar a synthetic trace of the same
+ * shape is generated.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MemberLookupBenchmark {
+
+    private final List<String[]> fieldTrace = new ArrayList<>();
+    private final List<String[]> methodTrace = new ArrayList<>();
+
+    private Map<EntryTriple, String> fieldNames;
+    private Map<EntryTriple, String> methodNames;
+    private HashRemapper remapper;
+
+    @Setup
+    public void setup() throws IOException {
+        Map<String, String> classNames = new HashMap<>();
+        this.fieldNames = new HashMap<>();
+        this.methodNames = new HashMap<>();
+
+        String jar = System.getProperty("kiln.benchmarkJar");
+        if (jar != null) {
+            this.readTrace(new File(jar));
+        } else {
+            this.generateTrace();
+        }
+
+        for (String[] field : this.fieldTrace) {
+            if (field[3] != null) {
+                this.fieldNames.put(new EntryTriple(field[0], field[1], ""), "field_" + this.fieldNames.size());
+            }
+        }
+        for (String[] method : this.methodTrace) {
+            if (method[3] != null) {
+                this.methodNames.put(new EntryTriple(method[0], method[1], method[2]), "method_" + this.methodNames.size());
+            }
+        }
+
+        this.remapper = new HashRemapper(classNames, this.fieldNames, this.methodNames, new HashMap<>());
+    }
+
+    /**
+     * Entries are owner, name, descriptor and a marker that is non-null if the member is declared in the jar.
+     */
+    private void readTrace(File file) throws IOException {
+        try (JarFile jarFile = new JarFile(file)) {
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                if (!entry.getName().endsWith(".class")) {
+                    continue;
+                }
+
+                try (InputStream inputStream = jarFile.getInputStream(entry)) {
+                    new ClassReader(inputStream).accept(new ClassVisitor(Opcodes.ASM9) {
+
+                        private String owner;
+
+                        @Override
+                        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+                            this.owner = name;
+                        }
+
+                        @Override
+                        public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+                            fieldTrace.add(new String[] {this.owner, name, descriptor, ""});
+                            return null;
+                        }
+
+                        @Override
+                        public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                            methodTrace.add(new String[] {this.owner, name, descriptor, ""});
+                            return new MethodVisitor(Opcodes.ASM9) {
+
+                                @Override
+                                public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+                                    fieldTrace.add(new String[] {owner, name, descriptor, null});
+                                }
+
+                                @Override
+                                public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+                                    methodTrace.add(new String[] {owner, name, descriptor, null});
+                                }
+
+                            };
+                        }
+
+                    }, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+                }
+            }
+        }
+    }
+
+    /**
+     * Roughly the shape of a vanilla jar: a few thousand classes, references to declared and library members.
+     */
+    private void generateTrace() {
+        Random random = new Random(0);
+        List<String[]> fields = new ArrayList<>();
+        List<String[]> methods = new ArrayList<>();
+
+        for (int i = 0; i < 6000; i++) {
+            String owner = "net/minecraft/class_" + i;
+            for (int j = 0; j < 6; j++) {
+                String[] field = {owner, "field_" + j, "I", ""};
+                fields.add(field);
+                this.fieldTrace.add(field);
+            }
+            for (int j = 0; j < 12; j++) {
+                String[] method = {owner, "method_" + j, "(L" + owner + ";I)V", ""};
+                methods.add(method);
+                this.methodTrace.add(method);
+            }
+        }
+
+        for (int i = 0; i < 400000; i++) {
+            if (random.nextInt(4) == 0) {
+                this.methodTrace.add(new String[] {"java/lang/Object", "toString", "()Ljava/lang/String;", null});
+            } else {
+                String[] method = methods.get(random.nextInt(methods.size()));
+                this.methodTrace.add(new String[] {method[0], method[1], method[2], null});
+            }
+
+            if (random.nextInt(2) == 0) {
+                String[] field = fields.get(random.nextInt(fields.size()));
+                this.fieldTrace.add(new String[] {field[0], field[1], field[2], null});
+            }
+        }
+    }
+
+    @Benchmark
+    public void entryTripleMap(Blackhole blackhole) {
+        for (String[] field : this.fieldTrace) {
+            blackhole.consume(this.fieldNames.getOrDefault(new EntryTriple(field[0], field[1], ""), field[1]));
+        }
+        for (String[] method : this.methodTrace) {
+            blackhole.consume(this.methodNames.getOrDefault(new EntryTriple(method[0], method[1], method[2]), method[1]));
+        }
+    }
+
+    @Benchmark
+    public void memberTables(Blackhole blackhole) {
+        for (String[] field : this.fieldTrace) {
+            blackhole.consume(this.remapper.mapFieldName(field[0], field[1], field[2]));
+        }
+        for (String[] method : this.methodTrace) {
+            blackhole.consume(this.remapper.mapMethodName(method[0], method[1], method[2]));
+        }
+    }
+
+}
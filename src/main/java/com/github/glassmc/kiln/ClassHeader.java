@@ -0,0 +1,74 @@
+package com.github.glassmc.kiln;
+
+import org.objectweb.asm.ClassReader;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The header of a compiled class and the classes its constant pool refers to, read without visiting any of its members.
+ */
+public class ClassHeader {
+
+    private final int access;
+    private final String name;
+    private final String superName;
+    private final String[] interfaces;
+    private final Set<String> references;
+
+    public ClassHeader(ClassReader classReader) {
+        this(classReader.getAccess(), classReader.getClassName(), classReader.getSuperName(), classReader.getInterfaces(), readReferences(classReader));
+    }
+
+    public ClassHeader(int access, String name, String superName, String[] interfaces, Set<String> references) {
+        this.access = access;
+        this.name = name;
+        this.superName = superName;
+        this.interfaces = interfaces;
+        this.references = Collections.unmodifiableSet(references);
+    }
+
+    private static Set<String> readReferences(ClassReader classReader) {
+        Set<String> references = new HashSet<>();
+        char[] buffer = new char[classReader.getMaxStringLength()];
+        for (int i = 1; i < classReader.getItemCount(); i++) {
+            int offset = classReader.getItem(i);
+            if (offset > 0 && classReader.readByte(offset - 1) == 7) {
+                references.add(classReader.readUTF8(offset, buffer));
+            }
+        }
+        references.remove(classReader.getClassName());
+        return references;
+    }
+
+    public int getAccess() {
+        return access;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSuperName() {
+        return superName;
+    }
+
+    public String[] getInterfaces() {
+        return interfaces;
+    }
+
+    /**
+     * The classes named by the constant pool, anything the class extends, implements or uses in its code.
+     */
+    public Set<String> getReferences() {
+        return references;
+    }
+
+    public boolean hasSameParents(ClassHeader other) {
+        return other != null && Objects.equals(this.superName, other.superName) && Arrays.equals(this.interfaces, other.interfaces);
+    }
+
+}
@@ -1,15 +1,24 @@
 package com.github.glassmc.kiln;
 
 import com.github.glassmc.kiln.internalremapper.Remapper;
+import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.tree.ClassNode;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public abstract class CustomTransformer {
 
     private Remapper remapper;
     private Map<String, Pair<Map<String, String>, List<String>>> context;
+    private File cacheDirectory;
+    private Map<String, File> classFiles;
+    private Map<String, ClassHeader> headers;
 
     @SuppressWarnings("unused")
     public Remapper getRemapper() {
@@ -20,6 +29,55 @@ public abstract class CustomTransformer {
         return context;
     }
 
+    /**
+     * A directory owned by this transformer that is kept between builds.
+     */
+    public File getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    /**
+     * Reads the compiled class from disk, or returns null if it isn't part of the project.
+     */
+    public ClassReader getClassReader(String name) {
+        File file = classFiles == null ? null : classFiles.get(name);
+        if (file == null) {
+            return null;
+        }
+
+        try {
+            return new ClassReader(Files.readAllBytes(file.toPath()));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * The headers of every class in the project, including the unchanged ones.
+     */
+    public Map<String, ClassHeader> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Called before any class is parsed with the classes that changed since the last build. Returns those of them
+     * whose change also changes how the classes referring to them are transformed, the unchanged classes that refer
+     * to one are transformed again. None by default.
+     */
+    public Set<String> getReferenceDependencies(Set<String> changedClasses) {
+        return Collections.emptySet();
+    }
+
+    /**
+     * Returns the classes besides {@code modifiedClasses} that have to be parsed into the context passed to
+     * {@link #map}, or null for every class in the project, which is the default. Every class in the context is
+     * parsed fully.
+     */
+    public Set<String> getContextClasses(Set<String> modifiedClasses) {
+        return null;
+    }
+
     public void setRemapper(Remapper remapper) {
         this.remapper = remapper;
     }
@@ -28,6 +86,18 @@ public abstract class CustomTransformer {
         this.context = context;
     }
 
+    public void setCacheDirectory(File cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    public void setClassFiles(Map<String, File> classFiles) {
+        this.classFiles = classFiles;
+    }
+
+    public void setHeaders(Map<String, ClassHeader> headers) {
+        this.headers = headers;
+    }
+
     public abstract void map(List<ClassNode> context, Map<String, ClassNode> classNodes);
 
 }
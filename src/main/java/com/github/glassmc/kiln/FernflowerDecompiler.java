@@ -2,6 +2,7 @@ package com.github.glassmc.kiln;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -10,12 +11,19 @@ import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.LinkedHashMap;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
+import java.util.jar.Manifest;
 import java.util.logging.Logger;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import org.jboss.windup.decompiler.api.ClassDecompileRequest;
 import org.jboss.windup.decompiler.api.DecompilationException;
@@ -32,6 +40,7 @@ import org.jetbrains.java.decompiler.main.Fernflower;
 import org.jetbrains.java.decompiler.main.extern.IBytecodeProvider;
 import org.jetbrains.java.decompiler.main.extern.IFernflowerLogger;
 import org.jetbrains.java.decompiler.main.extern.IFernflowerPreferences;
+import org.jetbrains.java.decompiler.main.extern.IResultSaver;
 import org.jetbrains.java.decompiler.util.InterpreterUtil;
 
 /**
@@ -49,6 +58,14 @@ public class FernflowerDecompiler extends AbstractDecompiler
     {
     }
 
+    /**
+     * Receives progress updates from {@link #decompileArchiveParallel}. May be called from any worker thread.
+     */
+    public interface ProgressListener
+    {
+        void progress(int completed, int total);
+    }
+
     private Map<String, Object> getOptions()
     {
         Map<String, Object> options = new HashMap<>();
@@ -316,4 +333,252 @@ public class FernflowerDecompiler extends AbstractDecompiler
         }
     }
 
+
+    /**
+     * Decompiles an archive on a pool of worker threads. Each top-level class is decompiled together with its
+     * <code>$</code> inner classes in its own {@link Fernflower} context, so groups are independent of each other.
+     * The sources are written straight into {@code output}, which is left open for the caller.
+     */
+    public DecompilationResult decompileArchiveParallel(Path archive, ZipOutputStream output, int threads, final DecompilationListener delegate,
+                final ProgressListener progress) throws DecompilationException
+    {
+        final DecompilationResult result = new DecompilationResult();
+        DecompilationListener listener = new DecompilationListener()
+        {
+            private volatile boolean cancelled;
+
+            @Override
+            public synchronized void fileDecompiled(List<String> inputPaths, String outputPath)
+            {
+                try
+                {
+                    result.addDecompiled(inputPaths, outputPath);
+                    delegate.fileDecompiled(inputPaths, outputPath);
+                }
+                catch (WindupStopException stop)
+                {
+                    this.cancelled = true;
+                    throw new WindupStopException(stop);
+                }
+            }
+
+            @Override
+            public synchronized void decompilationFailed(List<String> inputPath, String message)
+            {
+                result.addFailure(new DecompilationFailure(message, inputPath, null));
+                delegate.decompilationFailed(inputPath, message);
+            }
+
+            @Override
+            public void decompilationProcessComplete()
+            {
+                delegate.decompilationProcessComplete();
+            }
+
+            @Override
+            public boolean isCancelled()
+            {
+                return this.cancelled || delegate.isCancelled();
+            }
+        };
+
+        LOG.info("Decompiling archive '" + archive.toAbsolutePath() + "' with " + threads + " threads");
+        final JarFile jar;
+        try
+        {
+            jar = new JarFile(archive.toFile());
+        }
+        catch (IOException ex)
+        {
+            throw new DecompilationException("Can't load .jar: " + archive, ex);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        try
+        {
+            final Map<String, List<JarEntry>> groups = new LinkedHashMap<>();
+            Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements())
+            {
+                JarEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (!name.endsWith(".class"))
+                    continue;
+
+                int innerIndex = name.indexOf('$');
+                String outerName = innerIndex == -1 ? name.substring(0, name.length() - ".class".length()) : name.substring(0, innerIndex);
+                groups.computeIfAbsent(outerName, k -> new ArrayList<>()).add(entry);
+            }
+
+            final int total = groups.size();
+            final AtomicInteger completed = new AtomicInteger(0);
+
+            List<Future<?>> futures = new ArrayList<>(total);
+            for (final Map.Entry<String, List<JarEntry>> group : groups.entrySet())
+            {
+                futures.add(executor.submit(() -> {
+                    if (!listener.isCancelled())
+                        decompileGroup(jar, group.getKey(), group.getValue(), output, listener);
+
+                    if (progress != null)
+                        progress.progress(completed.incrementAndGet(), total);
+                    return null;
+                }));
+            }
+
+            for (Future<?> future : futures)
+            {
+                future.get();
+            }
+
+            listener.decompilationProcessComplete();
+            return result;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new DecompilationException("Decompilation of " + archive + " was interrupted", e);
+        }
+        catch (ExecutionException e)
+        {
+            throw new DecompilationException("Decompilation of " + archive + " failed", e.getCause());
+        }
+        finally
+        {
+            executor.shutdownNow();
+            try
+            {
+                jar.close();
+            }
+            catch (IOException e)
+            {
+                LOG.warning("Failed to close jar file: " + jar.getName());
+            }
+        }
+    }
+
+    /**
+     * Decompiles the outer class {@code outerName} and its inner classes, failures are reported under the outer class
+     * whichever order the jar lists the group in.
+     */
+    private void decompileGroup(final JarFile jar, String outerName, List<JarEntry> group, ZipOutputStream output, DecompilationListener listener)
+    {
+        final Map<String, JarEntry> entriesByPath = new HashMap<>();
+        for (JarEntry entry : group)
+        {
+            entriesByPath.put(new File(entry.getName()).getAbsolutePath(), entry);
+        }
+
+        IBytecodeProvider bytecodeProvider = (externalPath, internalPath) -> InterpreterUtil.getBytes(jar, entriesByPath.get(externalPath));
+
+        ZipResultSaver resultSaver = new ZipResultSaver(Collections.singletonList(outerName), output, listener);
+        Fernflower fernflower = new Fernflower(bytecodeProvider, resultSaver, getOptions(), new FernflowerJDKLogger());
+        try
+        {
+            for (JarEntry entry : group)
+            {
+                fernflower.getStructContext().addSpace(new File(entry.getName()), true);
+            }
+            fernflower.decompileContext();
+
+            if (!resultSaver.isFileSaved())
+                listener.decompilationFailed(Collections.singletonList(outerName), "File was not decompiled!");
+        }
+        catch (WindupStopException stop)
+        {
+            throw new WindupStopException(stop);
+        }
+        catch (Throwable t)
+        {
+            listener.decompilationFailed(Collections.singletonList(outerName), "Decompilation failed due to: " + t.getMessage());
+            LOG.warning("Decompilation of " + outerName + " failed due to: " + t.getMessage());
+        }
+    }
+
+    /**
+     * Saves the sources of one group of classes into a zip shared by every worker, the zip is locked while an entry is written.
+     */
+    private static class ZipResultSaver implements IResultSaver
+    {
+        private final List<String> requests;
+        private final ZipOutputStream output;
+        private final DecompilationListener listener;
+        private boolean fileSaved;
+
+        private ZipResultSaver(List<String> requests, ZipOutputStream output, DecompilationListener listener)
+        {
+            this.requests = requests;
+            this.output = output;
+            this.listener = listener;
+        }
+
+        public boolean isFileSaved()
+        {
+            return this.fileSaved;
+        }
+
+        @Override
+        public void saveClassFile(String path, String qualifiedName, String entryName, String content, int[] mapping)
+        {
+            if (content == null)
+                return;
+
+            String outputPath = qualifiedName + ".java";
+            byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+            try
+            {
+                synchronized (this.output)
+                {
+                    this.output.putNextEntry(new ZipEntry(outputPath));
+                    this.output.write(bytes);
+                    this.output.closeEntry();
+                }
+            }
+            catch (IOException e)
+            {
+                this.listener.decompilationFailed(this.requests, "Failed to save " + outputPath + " due to: " + e.getMessage());
+                return;
+            }
+
+            this.fileSaved = true;
+            this.listener.fileDecompiled(this.requests, outputPath);
+        }
+
+        @Override
+        public void saveClassEntry(String path, String archiveName, String qualifiedName, String entryName, String content)
+        {
+            this.saveClassFile(path, qualifiedName, entryName, content, null);
+        }
+
+        @Override
+        public void saveFolder(String path)
+        {
+        }
+
+        @Override
+        public void copyFile(String source, String path, String entryName)
+        {
+        }
+
+        @Override
+        public void createArchive(String path, String archiveName, Manifest manifest)
+        {
+        }
+
+        @Override
+        public void saveDirEntry(String path, String archiveName, String entryName)
+        {
+        }
+
+        @Override
+        public void copyEntry(String source, String path, String archiveName, String entry)
+        {
+        }
+
+        @Override
+        public void closeArchive(String path, String archiveName)
+        {
+        }
+    }
+
 }
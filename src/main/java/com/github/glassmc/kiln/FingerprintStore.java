@@ -0,0 +1,168 @@
+package com.github.glassmc.kiln;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Content hashes of the classes reobfuscated by the last build of a project, the files they were written to and
+ * their headers, so unchanged classes don't have to be parsed again and the classes depending on a changed one can be
+ * found. The store is tied to the mappings, transformers
+ * and plugin version it was built with, anything else starts from an empty store.
+ */
+public class FingerprintStore {
+
+    private static final int FORMAT_VERSION = 3;
+
+    private final File file;
+    private final String mappingsHash;
+    private final Map<String, Fingerprint> fingerprints = new HashMap<>();
+
+    public FingerprintStore(File file, String mappingsHash) {
+        this.file = file;
+        this.mappingsHash = mappingsHash;
+
+        if (file.exists()) {
+            this.read();
+        }
+    }
+
+    public static String hash(byte[] data) {
+        try {
+            StringBuilder hash = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-1").digest(data)) {
+                hash.append(String.format("%02x", b));
+            }
+            return hash.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Whether the class was written to {@code output} from exactly this content with the current mappings.
+     */
+    public boolean isUnchanged(String className, String hash, File output) {
+        Fingerprint fingerprint = this.fingerprints.get(className);
+        return fingerprint != null && fingerprint.hash.equals(hash) && fingerprint.output.equals(output.getAbsolutePath()) && output.exists();
+    }
+
+    /**
+     * The header stored with the class by the last build, or null if it wasn't part of it.
+     */
+    public ClassHeader getHeader(String className) {
+        Fingerprint fingerprint = this.fingerprints.get(className);
+        return fingerprint == null ? null : fingerprint.header;
+    }
+
+    public void put(String className, String hash, File output, ClassHeader header) {
+        this.fingerprints.put(className, new Fingerprint(hash, output.getAbsolutePath(), header));
+    }
+
+    /**
+     * Forgets every class that isn't in {@code classNames} and deletes its output.
+     */
+    public void retain(Set<String> classNames) {
+        Iterator<Map.Entry<String, Fingerprint>> iterator = this.fingerprints.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Fingerprint> entry = iterator.next();
+            if (!classNames.contains(entry.getKey())) {
+                new File(entry.getValue().output).delete();
+                iterator.remove();
+            }
+        }
+    }
+
+    public void save() {
+        this.file.getParentFile().mkdirs();
+        File temp = new File(this.file.getAbsolutePath() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp.toPath())))) {
+            output.writeInt(FORMAT_VERSION);
+            output.writeUTF(this.mappingsHash);
+
+            output.writeInt(this.fingerprints.size());
+            for (Map.Entry<String, Fingerprint> entry : this.fingerprints.entrySet()) {
+                output.writeUTF(entry.getKey());
+                output.writeUTF(entry.getValue().hash);
+                output.writeUTF(entry.getValue().output);
+                writeHeader(output, entry.getValue().header);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        try {
+            Files.move(temp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void read() {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(this.file.toPath())))) {
+            if (input.readInt() != FORMAT_VERSION || !input.readUTF().equals(this.mappingsHash)) {
+                return;
+            }
+
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                this.fingerprints.put(input.readUTF(), new Fingerprint(input.readUTF(), input.readUTF(), readHeader(input)));
+            }
+        } catch (IOException e) {
+            System.out.printf("Rebuilding fingerprint store %s (%s)%n", this.file.getName(), e);
+            this.fingerprints.clear();
+        }
+    }
+
+    private static void writeHeader(DataOutputStream output, ClassHeader header) throws IOException {
+        output.writeInt(header.getAccess());
+        output.writeUTF(header.getName());
+        output.writeBoolean(header.getSuperName() != null);
+        if (header.getSuperName() != null) {
+            output.writeUTF(header.getSuperName());
+        }
+        output.writeInt(header.getInterfaces().length);
+        for (String anInterface : header.getInterfaces()) {
+            output.writeUTF(anInterface);
+        }
+        output.writeInt(header.getReferences().size());
+        for (String reference : header.getReferences()) {
+            output.writeUTF(reference);
+        }
+    }
+
+    private static ClassHeader readHeader(DataInputStream input) throws IOException {
+        int access = input.readInt();
+        String name = input.readUTF();
+        String superName = input.readBoolean() ? input.readUTF() : null;
+        String[] interfaces = new String[input.readInt()];
+        for (int i = 0; i < interfaces.length; i++) {
+            interfaces[i] = input.readUTF();
+        }
+        int referenceCount = input.readInt();
+        Set<String> references = new HashSet<>(referenceCount);
+        for (int i = 0; i < referenceCount; i++) {
+            references.add(input.readUTF());
+        }
+        return new ClassHeader(access, name, superName, interfaces, references);
+    }
+
+    private static class Fingerprint {
+
+        private final String hash;
+        private final String output;
+        private final ClassHeader header;
+
+        private Fingerprint(String hash, String output, ClassHeader header) {
+            this.hash = hash;
+            this.output = output;
+            this.header = header;
+        }
+
+    }
+
+}
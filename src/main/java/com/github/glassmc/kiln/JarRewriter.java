@@ -0,0 +1,110 @@
+package com.github.glassmc.kiln;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Rewrites jars without recompressing them, every entry that isn't replaced is copied as its raw compressed bytes.
+ */
+public class JarRewriter {
+
+    /**
+     * Maps the entry name of every class in {@code classesObf/<language>/main} to its file, the first language wins.
+     */
+    public static Map<String, File> getObfuscatedClasses(File classesObf) {
+        Map<String, File> classes = new HashMap<>();
+
+        String[] languages = classesObf.list();
+        if (languages == null) {
+            return classes;
+        }
+
+        for (String language : languages) {
+            File main = new File(classesObf, language + "/main");
+            if (!main.isDirectory()) {
+                continue;
+            }
+
+            for (File file : FileUtils.listFiles(main, new String[] {"class"}, true)) {
+                String name = main.toPath().relativize(file.toPath()).toString().replace("\\", "/");
+                classes.putIfAbsent(name, file);
+            }
+        }
+
+        return classes;
+    }
+
+    /**
+     * Concatenates {@code inputs} into {@code output}, an entry name that was already added by an earlier jar is skipped.
+     * The input jars are opened concurrently, their entries are then copied in order.
+     */
+    public static void merge(List<File> inputs, File output) throws IOException {
+        ExecutorService executor = Util.createExecutor();
+        List<Future<ZipFile>> zipFiles = new ArrayList<>();
+
+        try (ZipArchiveOutputStream outputStream = new ZipArchiveOutputStream(output)) {
+            for (File input : inputs) {
+                zipFiles.add(executor.submit(() -> new ZipFile(input)));
+            }
+
+            Set<String> alreadyAdded = new HashSet<>();
+            for (Future<ZipFile> future : zipFiles) {
+                ZipFile zipFile = future.get();
+
+                Enumeration<ZipArchiveEntry> entries = zipFile.getEntriesInPhysicalOrder();
+                while (entries.hasMoreElements()) {
+                    ZipArchiveEntry entry = entries.nextElement();
+                    if (alreadyAdded.add(entry.getName())) {
+                        outputStream.addRawArchiveEntry(entry, zipFile.getRawInputStream(entry));
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            // queued opens still run so that every future can be closed
+            executor.shutdown();
+            for (Future<ZipFile> future : zipFiles) {
+                try {
+                    future.get().close();
+                } catch (InterruptedException | ExecutionException ignored) {
+                }
+            }
+        }
+    }
+
+    public static void rewrite(File input, File output, Map<String, File> replacements) throws IOException {
+        try (ZipFile zipFile = new ZipFile(input);
+             ZipArchiveOutputStream outputStream = new ZipArchiveOutputStream(output)) {
+            Enumeration<ZipArchiveEntry> entries = zipFile.getEntriesInPhysicalOrder();
+            while (entries.hasMoreElements()) {
+                ZipArchiveEntry entry = entries.nextElement();
+
+                File replacement = entry.getName().endsWith(".class") ? replacements.get(entry.getName()) : null;
+                if (replacement != null) {
+                    ZipArchiveEntry newEntry = new ZipArchiveEntry(entry.getName());
+                    newEntry.setTime(entry.getTime());
+                    outputStream.putArchiveEntry(newEntry);
+                    Files.copy(replacement.toPath(), outputStream);
+                    outputStream.closeArchiveEntry();
+                } else {
+                    outputStream.addRawArchiveEntry(entry, zipFile.getRawInputStream(entry));
+                }
+            }
+        }
+    }
+
+}
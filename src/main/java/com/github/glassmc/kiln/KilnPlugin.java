@@ -2,16 +2,18 @@ package com.github.glassmc.kiln;
 
 import com.github.glassmc.kiln.task.ClearMappings;
 import com.github.glassmc.kiln.task.GenerateRunConfiguration;
+import com.github.glassmc.kiln.task.GenerateSources;
+import com.github.glassmc.kiln.task.SetupMinecraft;
 import com.github.glassmc.kiln.mappings.IMappingsProvider;
+import com.github.glassmc.kiln.mappings.LazyContext;
 import com.github.jengelman.gradle.plugins.shadow.tasks.ShadowJar;
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
 import org.gradle.api.*;
 import org.gradle.api.artifacts.Configuration;
 import org.gradle.api.artifacts.Dependency;
 import org.gradle.api.artifacts.PublishArtifact;
 import org.gradle.api.file.RegularFile;
 import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.TaskProvider;
 import org.gradle.api.publish.PublishingExtension;
 import org.gradle.api.publish.maven.MavenPublication;
 import org.objectweb.asm.*;
@@ -20,40 +22,63 @@ import com.github.glassmc.kiln.internalremapper.Remapper;
 import org.objectweb.asm.tree.ClassNode;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.*;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
-import java.util.jar.JarInputStream;
-import java.util.jar.JarOutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 public class KilnPlugin implements Plugin<Project> {
 
     protected static KilnPlugin mainInstance;
     protected static KilnPlugin instance;
+    private static final Map<String, KilnPlugin> instances = new ConcurrentHashMap<>();
 
     public static KilnPlugin getInstance() {
         return instance;
     }
 
+    public static KilnPlugin getInstance(String projectPath) {
+        return instances.get(projectPath);
+    }
+
     public static KilnPlugin getMainInstance() {
         return mainInstance;
     }
 
+    /**
+     * Whether Gradle runs with --offline or kiln.offline is set, cached files are used without revalidating them.
+     */
+    public static boolean isOffline() {
+        if (Boolean.getBoolean("kiln.offline")) {
+            return true;
+        }
+
+        KilnPlugin plugin = mainInstance != null ? mainInstance : instance;
+        return plugin != null && plugin.project.getGradle().getStartParameter().isOffline();
+    }
+
     protected Project project;
     private KilnExtension extension;
+    private Provider<MinecraftSetupService> setupService;
 
     // only stored for the plugin in root project
     private final List<Pair<IMappingsProvider, Boolean>> allMappingsProviders = new ArrayList<>();
     private final List<Pair<IMappingsProvider, Boolean>> mappingsProviders = new ArrayList<>();
+    private final Set<String> minecraftDependencies = new LinkedHashSet<>();
 
     @Override
     public void apply(Project project) {
         instance = this;
+        instances.put(project.getPath(), this);
         this.project = project;
 
         this.extension = project.getExtensions().create("kiln", KilnExtension.class);
+        this.setupService = project.getGradle().getSharedServices().registerIfAbsent("kilnMinecraftSetup", MinecraftSetupService.class, spec -> { });
 
         this.mappingsProviders.clear();
 
@@ -65,25 +90,43 @@ public class KilnPlugin implements Plugin<Project> {
 
         project.getRepositories().maven(action -> action.setUrl(new File(this.getCache(), "minecraft/localMaven")));
 
+        TaskProvider<SetupMinecraft> setupMinecraft = project.getTasks().register("setupMinecraft", SetupMinecraft.class, task -> {
+            task.setGroup("kiln");
+            task.getPluginCache().set(this.getCache());
+            task.getRecords().set(new File(project.getBuildDir(), "kiln/minecraft"));
+        });
+        project.getTasks().getByName("compileJava").dependsOn(setupMinecraft);
+        project.getTasks().register("genSources", GenerateSources.class, task -> {
+            task.setGroup("kiln");
+            task.getMappedJars().from(project.files((Callable<List<File>>) () -> setupMinecraft.get().getMappedJars()).builtBy(setupMinecraft));
+        });
+
         project.afterEvaluate(p -> {
+            Set<String> minecraftDependencies = new LinkedHashSet<>();
             for (Configuration configuration : project.getConfigurations()) {
                 for (Dependency dependency : configuration.getDependencies()) {
                     if (dependency.getGroup() != null && dependency.getGroup().equals("net.minecraft") &&
                             (dependency.getName().startsWith("client-") || dependency.getName().startsWith("server-")) &&
                             dependency.getVersion() != null) {
-                        int splitPoint = dependency.getName().indexOf("-");
-                        String environment = dependency.getName().substring(0, splitPoint);
-                        String version = dependency.getName().substring(splitPoint + 1);
-
-                        String mappings = dependency.getVersion();
-                        String mappingsVersion = null;
-                        if (dependency.getVersion().contains("-")) {
-                            String[] versionSplit = dependency.getVersion().split("-");
-                            mappings = versionSplit[0];
-                            mappingsVersion = versionSplit[1];
-                        }
+                        minecraftDependencies.add(dependency.getName() + ":" + dependency.getVersion());
+                    }
+                }
+            }
+
+            synchronized (this) {
+                this.minecraftDependencies.addAll(minecraftDependencies);
+            }
+            setupMinecraft.configure(task -> task.getMinecraftDependencies().set(minecraftDependencies));
 
-                        Util.minecraft(environment, version, mappings, mappingsVersion, false);
+            // an IDE import resolves the dependencies without running any task, so they have to exist right away
+            boolean ideSync = Boolean.getBoolean("idea.sync.active");
+            if (ideSync || Boolean.getBoolean("kiln.eagerSetup")) {
+                for (String minecraftDependency : minecraftDependencies) {
+                    File mappedJar = setupMinecraft(this, minecraftDependency);
+                    setupMinecraft.get().record(minecraftDependency, mappedJar);
+
+                    if (ideSync) {
+                        Util.generateSources(mappedJar);
                     }
                 }
             }
@@ -131,7 +174,14 @@ public class KilnPlugin implements Plugin<Project> {
 
         if (project.getRootProject() == project) {
             mainInstance = this;
-            project.getTasks().register("genRunConfiguration", GenerateRunConfiguration.class);
+            project.getTasks().register("genRunConfiguration", GenerateRunConfiguration.class, task -> {
+                for (Project project1 : project.getAllprojects()) {
+                    Task setupTask = project1.getTasks().findByName("setupMinecraft");
+                    if (setupTask != null) {
+                        task.dependsOn(setupTask);
+                    }
+                }
+            });
             project.getTasks().register("clearMappings", ClearMappings.class);
 
             Configuration shadowRuntime = project.getConfigurations().create("shadowRuntime");
@@ -171,28 +221,8 @@ public class KilnPlugin implements Plugin<Project> {
                 filesToAppend.add(allMapped1);
             }
 
-            List<String> alreadyAdded = new ArrayList<>();
             try {
-                JarOutputStream jarOutputStream = new JarOutputStream(Files.newOutputStream(new File(allMapped.getAbsolutePath().replace("-all-mapped.jar", "-all-all-mapped.jar")).toPath()));
-
-                for (File file : filesToAppend) {
-                    JarFile jarFile = new JarFile(file);
-                    Enumeration<JarEntry> entries = jarFile.entries();
-
-                    while (entries.hasMoreElements()) {
-                        JarEntry jarEntry = entries.nextElement();
-
-                        if (!alreadyAdded.contains(jarEntry.getName())) {
-                            jarOutputStream.putNextEntry(new JarEntry(jarEntry.getName()));
-                            jarOutputStream.write(IOUtils.toByteArray(jarFile.getInputStream(jarEntry)));
-                            jarOutputStream.closeEntry();
-
-                            alreadyAdded.add(jarEntry.getName());
-                        }
-                    }
-                }
-
-                jarOutputStream.close();
+                JarRewriter.merge(filesToAppend, new File(allMapped.getAbsolutePath().replace("-all-mapped.jar", "-all-all-mapped.jar")));
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
@@ -223,28 +253,7 @@ public class KilnPlugin implements Plugin<Project> {
             File file2 = new File(file.getAbsolutePath().replace(".jar", "-mapped.jar"));
 
             try {
-                JarOutputStream jarOutputStream = new JarOutputStream(Files.newOutputStream(file2.toPath()));
-                JarInputStream jarInputStream = new JarInputStream(Files.newInputStream(file.toPath()));
-                JarEntry jarEntry = jarInputStream.getNextJarEntry();
-                while (jarEntry != null) {
-                    File obfFile = new File(p.getBuildDir(), "THIS SHOULD NEVER EXIST");
-                    for (String language : Objects.requireNonNull(new File(p.getBuildDir(), "classesObf").list())) {
-                        if (!obfFile.exists()) {
-                            obfFile = new File(p.getBuildDir(), "classesObf/" + language + "/main/" + jarEntry.getName());
-                        }
-                    }
-
-                    jarOutputStream.putNextEntry(new JarEntry(jarEntry.getName()));
-                    if (obfFile.exists() && jarEntry.getName().endsWith(".class")) {
-                        jarOutputStream.write(FileUtils.readFileToByteArray(obfFile));
-                    } else {
-                        jarOutputStream.write(IOUtils.toByteArray(jarInputStream));
-                    }
-                    jarOutputStream.closeEntry();
-
-                    jarEntry = jarInputStream.getNextJarEntry();
-                }
-                jarOutputStream.close();
+                JarRewriter.rewrite(file, file2, JarRewriter.getObfuscatedClasses(new File(p.getBuildDir(), "classesObf")));
             } catch (IOException e) {
                 e.printStackTrace();
             }
@@ -264,28 +273,7 @@ public class KilnPlugin implements Plugin<Project> {
             File file2 = new File(file.getAbsolutePath().replace(".jar", "-mapped.jar"));
 
             try {
-                JarOutputStream jarOutputStream = new JarOutputStream(new FileOutputStream(file2));
-                JarInputStream jarInputStream = new JarInputStream(new FileInputStream(file));
-                JarEntry jarEntry = jarInputStream.getNextJarEntry();
-                while (jarEntry != null) {
-                    File obfFile = new File(p.getBuildDir(), "THIS SHOULD NEVER EXIST");
-                    for (String language : Objects.requireNonNull(new File(p.getBuildDir(), "classesObf").list())) {
-                        if (!obfFile.exists()) {
-                            obfFile = new File(p.getBuildDir(), "classesObf/" + language + "/main/" + jarEntry.getName());
-                        }
-                    }
-
-                    jarOutputStream.putNextEntry(new JarEntry(jarEntry.getName()));
-                    if (obfFile.exists() && jarEntry.getName().endsWith(".class")) {
-                        jarOutputStream.write(FileUtils.readFileToByteArray(obfFile));
-                    } else {
-                        jarOutputStream.write(IOUtils.toByteArray(jarInputStream));
-                    }
-                    jarOutputStream.closeEntry();
-
-                    jarEntry = jarInputStream.getNextJarEntry();
-                }
-                jarOutputStream.close();
+                JarRewriter.rewrite(file, file2, JarRewriter.getObfuscatedClasses(new File(p.getBuildDir(), "classesObf")));
             } catch (IOException e) {
                 e.printStackTrace();
             }
@@ -322,7 +310,65 @@ public class KilnPlugin implements Plugin<Project> {
         return project;
     }
 
-    public void addMappingsProvider(IMappingsProvider mappingsProvider, boolean prefix) {
+    /**
+     * The version of this plugin, or the timestamp of its code when it isn't packaged with one.
+     */
+    public static String getPluginVersion() {
+        String version = KilnPlugin.class.getPackage().getImplementationVersion();
+        return version != null ? version : getCodeVersion(KilnPlugin.class);
+    }
+
+    /**
+     * Where a class was loaded from and when that file last changed, so a rebuilt transformer is told apart from the old one.
+     */
+    private static String getCodeVersion(Class<?> clazz) {
+        try {
+            File location = new File(clazz.getProtectionDomain().getCodeSource().getLocation().toURI());
+            return clazz.getName() + "@" + location.getAbsolutePath() + ":" + location.lastModified();
+        } catch (Exception e) {
+            return clazz.getName();
+        }
+    }
+
+    /**
+     * Sets up a net.minecraft dependency given as {@code <environment>-<version>:<mappings>[-<mappingsVersion>]}.
+     */
+    public static File setupMinecraft(KilnPlugin plugin, String minecraftDependency) {
+        String[] coordinates = parseMinecraftDependency(minecraftDependency);
+        return Util.minecraft(plugin, coordinates[0], coordinates[1], coordinates[2], coordinates[3], false);
+    }
+
+    /**
+     * The environment, version, mappings and mappings version of a net.minecraft dependency, the mappings version may be null.
+     */
+    public static String[] parseMinecraftDependency(String minecraftDependency) {
+        String name = minecraftDependency.substring(0, minecraftDependency.indexOf(":"));
+        String dependencyVersion = minecraftDependency.substring(minecraftDependency.indexOf(":") + 1);
+
+        int splitPoint = name.indexOf("-");
+        String environment = name.substring(0, splitPoint);
+        String version = name.substring(splitPoint + 1);
+
+        String mappings = dependencyVersion;
+        String mappingsVersion = null;
+        if (dependencyVersion.contains("-")) {
+            String[] versionSplit = dependencyVersion.split("-");
+            mappings = versionSplit[0];
+            mappingsVersion = versionSplit[1];
+        }
+
+        return new String[] { environment, version, mappings, mappingsVersion };
+    }
+
+    public MinecraftSetupService getSetupService() {
+        return this.setupService.get();
+    }
+
+    public synchronized void addMappingsProvider(IMappingsProvider mappingsProvider, boolean prefix) {
+        // providers are shared between configurations and projects, each is only registered once
+        if (containsProvider(this.mappingsProviders, mappingsProvider)) {
+            return;
+        }
         this.mappingsProviders.add(new Pair<>(mappingsProvider, prefix));
 
         KilnPlugin.getMainInstance().addAllMappingsProvider(mappingsProvider, prefix);
@@ -332,10 +378,51 @@ public class KilnPlugin implements Plugin<Project> {
         return mappingsProviders;
     }
 
+    public synchronized Set<String> getMinecraftDependencies() {
+        return new LinkedHashSet<>(this.minecraftDependencies);
+    }
+
+    /**
+     * The Minecraft dependencies of every project in the build.
+     */
+    public Set<String> getAllMinecraftDependencies() {
+        Set<String> minecraftDependencies = new LinkedHashSet<>();
+        for (Project project1 : this.project.getRootProject().getAllprojects()) {
+            KilnPlugin plugin = project1.getPlugins().findPlugin(KilnPlugin.class);
+            if (plugin != null) {
+                minecraftDependencies.addAll(plugin.getMinecraftDependencies());
+            }
+        }
+        return minecraftDependencies;
+    }
+
+    /**
+     * Loads the mappings providers of this project through the setup service, once per build. The setupMinecraft
+     * task has set the dependencies up by then, so this only reads the mappings from the kiln cache.
+     */
+    public void loadMappingsProviders() {
+        for (String minecraftDependency : this.getMinecraftDependencies()) {
+            setupMinecraft(this, minecraftDependency);
+        }
+    }
+
+    private static boolean containsProvider(List<Pair<IMappingsProvider, Boolean>> mappingsProviders, IMappingsProvider mappingsProvider) {
+        for (Pair<IMappingsProvider, Boolean> pair : mappingsProviders) {
+            if (pair.getLeft() == mappingsProvider) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private void addAllMappingsProviders(Project project, List<Pair<IMappingsProvider, Boolean>> mappingsProviders) {
         KilnPlugin plugin = project.getPlugins().findPlugin(KilnPlugin.class);
         if (plugin != null) {
-            mappingsProviders.addAll(plugin.getMappingsProviders());
+            for (Pair<IMappingsProvider, Boolean> mappingsProvider : plugin.getMappingsProviders()) {
+                if (!containsProvider(mappingsProviders, mappingsProvider.getLeft())) {
+                    mappingsProviders.add(mappingsProvider);
+                }
+            }
         }
 
         for (Project project1 : project.getChildProjects().values()) {
@@ -356,63 +443,210 @@ public class KilnPlugin implements Plugin<Project> {
         }
     }
 
-    private static final Map<String, byte[]> cachedClasses = new HashMap<>();
-
     @NonNullApi
     private class ReobfuscateAction2 implements Action<Task> {
 
-        public List<String> getAllParents(Map<String, List<String>> classesMap, String clazz) {
+        /**
+         * All parents of a class followed by the class itself, without their version prefix.
+         * Memoized in {@code ancestry}, classes outside of the project only have themselves as ancestry.
+         */
+        private Ancestry getAncestry(Map<String, List<String>> classesMap, Map<String, Ancestry> ancestry, String clazz) {
+            Ancestry cached = ancestry.get(clazz);
+            if (cached != null) {
+                return cached;
+            }
+
             List<String> parents = new ArrayList<>();
+            String version = null;
+
+            for (String classThing : classesMap.getOrDefault(clazz, Collections.emptyList())) {
+                Ancestry parentAncestry = this.getAncestry(classesMap, ancestry, classThing);
+                parents.addAll(parentAncestry.classes);
+                if (parentAncestry.version != null) {
+                    version = parentAncestry.version;
+                }
+            }
+
+            if (clazz.startsWith("v")) {
+                parents.add(clazz.substring(clazz.indexOf("/") + 1));
+                version = clazz.substring(1, clazz.indexOf("/")).replace("_", ".");
+            } else {
+                parents.add(clazz);
+            }
+
+            Ancestry result = new Ancestry(parents, version);
+            ancestry.put(clazz, result);
+            return result;
+        }
+
+        /**
+         * Runs the visitor transformers over the trees of the modified classes, replacing them in both maps.
+         */
+        private void applyVisitorTransformers(List<VisitorTransformer> visitorTransformers, Map<String, ClassNode> classNodes, Map<String, ClassNode> classNodesModified) {
+            for (Map.Entry<String, ClassNode> entry : classNodesModified.entrySet()) {
+                ClassNode classNode = new ClassNode();
+                ClassVisitor visitor = classNode;
+                for (int i = visitorTransformers.size() - 1; i >= 0; i--) {
+                    visitor = visitorTransformers.get(i).transform(entry.getKey(), visitor);
+                }
 
-            for (String classThing : classesMap.getOrDefault(clazz, new ArrayList<>())) {
-                parents.addAll(this.getAllParents(classesMap, classThing));
+                entry.getValue().accept(visitor);
+                entry.setValue(classNode);
+                classNodes.put(entry.getKey(), classNode);
             }
+        }
 
-            parents.add(clazz);
-            return parents;
+        private File getObfFile(File classFile) {
+            return new File(classFile.getAbsolutePath().replace("\\", "/").replace("/classes/", "/classesObf/"));
         }
 
         @Override
         public void execute(Task task) {
             long startTime = System.currentTimeMillis();
 
+            for (Project project1 : project.getAllprojects()) {
+                KilnPlugin plugin = project1.getPlugins().findPlugin(KilnPlugin.class);
+                if (plugin != null) {
+                    plugin.loadMappingsProviders();
+                }
+            }
+
             List<Pair<IMappingsProvider, Boolean>> mappingsProviders = new ArrayList<>();
             addAllMappingsProviders(project, mappingsProviders);
 
+            List<Pair<Project, CustomTransformer>> transformers = new ArrayList<>();
+            addAllTransformers(project, transformers);
+
+            boolean treeTransformers = false;
+            for (Pair<Project, CustomTransformer> customTransformer : transformers) {
+                if (!(customTransformer.getRight() instanceof VisitorTransformer)) {
+                    treeTransformers = true;
+                }
+            }
+
+            // class trees are only built when a transformer needs them, otherwise classes are streamed at output
+            Map<String, ClassHeader> classHeaders = new HashMap<>();
             Map<String, ClassNode> classNodes = new HashMap<>();
             Map<String, ClassNode> classNodesModified = new HashMap<>();
             Map<String, File> classPaths = new HashMap<>();
+            Map<String, String> classHashes = new HashMap<>();
 
             File classes = new File(project.getBuildDir(), "classes");
 
+            // any change to the mappings, the transformers or the plugin itself invalidates every output
+            StringBuilder mappingSet = new StringBuilder(getPluginVersion()).append(';');
+            for (Pair<IMappingsProvider, Boolean> mappingsProvider : mappingsProviders) {
+                IMappingsProvider provider = mappingsProvider.getLeft();
+                mappingSet.append(provider.getID()).append(':').append(provider.getVersion()).append(':').append(provider.getMappingsVersion()).append(':').append(mappingsProvider.getRight()).append(';');
+            }
+            for (Pair<Project, CustomTransformer> customTransformer : transformers) {
+                mappingSet.append(customTransformer.getLeft().getPath()).append(':').append(getCodeVersion(customTransformer.getRight().getClass())).append(';');
+            }
+            FingerprintStore fingerprints = new FingerprintStore(new File(project.getBuildDir(), "kiln/fingerprints.bin"), FingerprintStore.hash(mappingSet.toString().getBytes(StandardCharsets.UTF_8)));
+
+            // unchanged classes take their header from the store and are only parsed if a tree transformer needs them
+            Map<String, String> allHashes = new HashMap<>();
+            Set<String> parentsChanged = new HashSet<>();
             for(File file : project.fileTree(classes)) {
                 if(!file.getName().endsWith(".class")) {
                     continue;
                 }
                 try {
-                    InputStream inputStream = new FileInputStream(file);
-                    byte[] data = IOUtils.readFully(inputStream, inputStream.available());
-                    ClassReader classReader = new ClassReader(data);
-                    ClassNode classNode = new ClassNode();
-                    classReader.accept(classNode, 0);
+                    byte[] data = Files.readAllBytes(file.toPath());
                     String language = file.getAbsolutePath();
                     language = language.substring(language.indexOf("classes" + File.separator) + 8);
                     language = language.substring(0, language.indexOf(File.separator));
                     String className = file.getAbsolutePath().replace(new File(classes, language + File.separator + "main").getAbsolutePath() + File.separator, "").replace(".class", "").replace("\\", "/");
-                    classNodes.put(className, classNode);
+                    String hash = FingerprintStore.hash(data);
 
-                    if (cachedClasses.get(className) == null || !Arrays.equals(data, cachedClasses.get(className)) || !new File(file.getAbsolutePath().replace("\\", "/").replace("/classes/", "/classesObf/")).exists()) {
-                        cachedClasses.put(className, data);
-                        classNodesModified.put(className, classNode);
+                    if (fingerprints.isUnchanged(className, hash, getObfFile(file))) {
+                        classHeaders.put(className, fingerprints.getHeader(className));
+                    } else {
+                        classHashes.put(className, hash);
+
+                        ClassHeader classHeader = new ClassHeader(new ClassReader(data));
+                        if (!classHeader.hasSameParents(fingerprints.getHeader(className))) {
+                            parentsChanged.add(className);
+                        }
+                        classHeaders.put(className, classHeader);
                     }
 
+                    allHashes.put(className, hash);
                     classPaths.put(className, file);
-                    inputStream.close();
                 } catch (IOException e) {
                     e.printStackTrace();
                 }
             }
 
+            for(int i = 0; i < transformers.size(); i++) {
+                CustomTransformer customTransformer = transformers.get(i).getRight();
+                customTransformer.setCacheDirectory(new File(project.getBuildDir(), "kiln/transformers/" + i + "-" + customTransformer.getClass().getSimpleName()));
+                customTransformer.setClassFiles(classPaths);
+                customTransformer.setHeaders(Collections.unmodifiableMap(classHeaders));
+            }
+
+            // members are remapped through the ancestry of their owner, so a class is written again when the ancestry of
+            // anything it refers to changed, or when a transformer says a changed class it refers to is transformed differently
+            boolean ancestryChanged = true;
+            while (ancestryChanged) {
+                ancestryChanged = false;
+                for (ClassHeader classHeader : classHeaders.values()) {
+                    if (!parentsChanged.contains(classHeader.getName()) && (parentsChanged.contains(classHeader.getSuperName()) || !Collections.disjoint(parentsChanged, Arrays.asList(classHeader.getInterfaces())))) {
+                        parentsChanged.add(classHeader.getName());
+                        ancestryChanged = true;
+                    }
+                }
+            }
+
+            Set<String> dependencies = new HashSet<>(parentsChanged);
+            Set<String> changedClasses = Collections.unmodifiableSet(new HashSet<>(classHashes.keySet()));
+            for (Pair<Project, CustomTransformer> customTransformer : transformers) {
+                dependencies.addAll(customTransformer.getRight().getReferenceDependencies(changedClasses));
+            }
+
+            for (ClassHeader classHeader : classHeaders.values()) {
+                String className = classHeader.getName();
+                if (!classHashes.containsKey(className) && (dependencies.contains(className) || !Collections.disjoint(dependencies, classHeader.getReferences()))) {
+                    classHashes.put(className, allHashes.get(className));
+                }
+            }
+
+            if (treeTransformers) {
+                Set<String> contextClasses = new HashSet<>();
+                boolean fullContext = false;
+                for (Pair<Project, CustomTransformer> customTransformer : transformers) {
+                    if (customTransformer.getRight() instanceof VisitorTransformer) {
+                        continue;
+                    }
+
+                    Set<String> transformerContext = customTransformer.getRight().getContextClasses(Collections.unmodifiableSet(classHashes.keySet()));
+                    if (transformerContext == null) {
+                        fullContext = true;
+                    } else {
+                        contextClasses.addAll(transformerContext);
+                    }
+                }
+
+                for (Map.Entry<String, File> classPath : classPaths.entrySet()) {
+                    String className = classPath.getKey();
+                    boolean modified = classHashes.containsKey(className);
+                    if (!modified && !fullContext && !contextClasses.contains(className)) {
+                        continue;
+                    }
+
+                    try {
+                        ClassNode classNode = new ClassNode();
+                        new ClassReader(Files.readAllBytes(classPath.getValue().toPath())).accept(classNode, 0);
+                        classNodes.put(className, classNode);
+                        if (modified) {
+                            classNodesModified.put(className, classNode);
+                        }
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+
             List<Pair<IMappingsProvider, Pair<Boolean, Remapper>>> remappers = mappingsProviders.stream()
                     .map(provider -> new Pair<>(provider.getLeft(), new Pair<>(provider.getRight(), provider.getLeft().getRemapper(IMappingsProvider.Direction.TO_OBFUSCATED))))
                     .collect(Collectors.toList());
@@ -420,10 +654,12 @@ public class KilnPlugin implements Plugin<Project> {
             System.out.println("Finished setup in " + (System.currentTimeMillis() - startTime) + " milliseconds.");
 
             Map<String, List<String>> classesMap = new HashMap<>();
+            Map<String, Ancestry> ancestry = new ConcurrentHashMap<>();
 
             Remapper collectiveRemapper = new Remapper() {
 
-                private final Map<String, String> cache = new HashMap<>();
+                // shared by every output thread
+                private final Map<String, String> cache = new ConcurrentHashMap<>();
 
                 @Override
                 public String map(String name) {
@@ -454,27 +690,14 @@ public class KilnPlugin implements Plugin<Project> {
                     String newName = cache.get(owner + name + descriptor);
 
                     if (newName == null) {
-                        List<String> parents = getAllParents(classesMap, owner);
-
-                        String nameVersion = null;
-                        for (String classString : new ArrayList<>(parents)) {
-                            if (classString.startsWith("v")) {
-                                String newClassString = classString.substring(classString.indexOf("/") + 1);
-                                parents.replaceAll(string -> {
-                                    if (string.equals(classString)) {
-                                        return newClassString;
-                                    }
-                                    return classString;
-                                });
-                                nameVersion = classString.substring(1, classString.indexOf("/")).replace("_", ".");
-                            }
-                        }
+                        Ancestry parents = getAncestry(classesMap, ancestry, owner);
+                        String nameVersion = parents.version;
 
                         newName = name;
 
                         boolean done = false;
 
-                        for (String classString : parents) {
+                        for (String classString : parents.classes) {
                             for (Pair<IMappingsProvider, Pair<Boolean, Remapper>> remapper : remappers) {
                                 if (!remapper.getRight().getLeft() || remapper.getLeft().getVersion().equals(nameVersion)) {
                                     newName = remapper.getRight().getRight().mapFieldName(classString, newName, descriptor);
@@ -502,26 +725,14 @@ public class KilnPlugin implements Plugin<Project> {
                     String newName = cache.get(owner + name + descriptor);
 
                     if (newName == null) {
-                        List<String> parents = getAllParents(classesMap, owner);
-                        String nameVersion = null;
-                        for (String classString : new ArrayList<>(parents)) {
-                            if (classString.startsWith("v")) {
-                                String newClassString = classString.substring(classString.indexOf("/") + 1);
-                                parents.replaceAll(string -> {
-                                    if (string.equals(classString)) {
-                                        return newClassString;
-                                    }
-                                    return classString;
-                                });
-                                nameVersion = classString.substring(1, classString.indexOf("/")).replace("_", ".");
-                            }
-                        }
+                        Ancestry parents = getAncestry(classesMap, ancestry, owner);
+                        String nameVersion = parents.version;
 
                         newName = name;
 
                         boolean done = false;
 
-                        for (String classString : parents) {
+                        for (String classString : parents.classes) {
                             for (Pair<IMappingsProvider, Pair<Boolean, Remapper>> remapper : remappers) {
                                 if (!remapper.getRight().getLeft() || remapper.getLeft().getVersion().equals(nameVersion)) {
                                     newName = remapper.getRight().getRight().mapMethodName(classString, newName, descriptor);
@@ -646,32 +857,50 @@ public class KilnPlugin implements Plugin<Project> {
 
             System.out.println("Actually beginning remapping!");
 
-            List<Pair<Project, CustomTransformer>> transformers = new ArrayList<>();
-            addAllTransformers(project, transformers);
-
-            for(Map.Entry<String, ClassNode> entry : classNodes.entrySet()) {
-                ClassNode classNode = entry.getValue();
-
+            for(ClassHeader classHeader : classHeaders.values()) {
                 List<String> parents = new ArrayList<>();
-                if (!classNode.superName.equals("java/lang/Object")) {
-                    parents.add(classNode.superName);
+                if (classHeader.getSuperName() != null && !classHeader.getSuperName().equals("java/lang/Object")) {
+                    parents.add(classHeader.getSuperName());
                 }
-                parents.addAll(classNode.interfaces);
+                parents.addAll(Arrays.asList(classHeader.getInterfaces()));
+
+                classesMap.put(classHeader.getName(), parents);
+            }
 
-                classesMap.put(classNode.name, parents);
+            for (String className : classesMap.keySet()) {
+                getAncestry(classesMap, ancestry, className);
             }
 
-            Map<String, Pair<Map<String, String>, List<String>>> context = new HashMap<>();
+            // classes are only resolved when a transformer asks for them
+            List<Map<String, Pair<Map<String, String>, List<String>>>> providerContexts = new ArrayList<>();
             for (Pair<IMappingsProvider, Boolean> mappingsProvider : mappingsProviders) {
-                context.putAll(mappingsProvider.getLeft().getContext(IMappingsProvider.Side.NAMED, mappingsProvider.getRight()));
+                Map<String, Pair<Map<String, String>, List<String>>> providerContext = mappingsProvider.getLeft().getContext(IMappingsProvider.Side.NAMED, mappingsProvider.getRight());
+                if (providerContext != null) {
+                    providerContexts.add(providerContext);
+                }
             }
+            Map<String, Pair<Map<String, String>, List<String>>> context = LazyContext.of(providerContexts);
 
-            for(Pair<Project, CustomTransformer> customTransformer : transformers) {
+            // transformers run in registration order, visitor transformers followed by a tree transformer are run over
+            // the class trees before it and the rest are streamed at output
+            List<VisitorTransformer> visitorTransformers = new ArrayList<>();
+            for(int i = 0; i < transformers.size(); i++) {
+                Pair<Project, CustomTransformer> customTransformer = transformers.get(i);
                 long remapTime = System.currentTimeMillis();
                 customTransformer.getRight().setRemapper(collectiveRemapper);
 
                 customTransformer.getRight().setContext(context);
 
+                if (customTransformer.getRight() instanceof VisitorTransformer) {
+                    visitorTransformers.add((VisitorTransformer) customTransformer.getRight());
+                    continue;
+                }
+
+                if (!visitorTransformers.isEmpty()) {
+                    applyVisitorTransformers(visitorTransformers, classNodes, classNodesModified);
+                    visitorTransformers.clear();
+                }
+
                 customTransformer.getRight().map(new ArrayList<>(classNodes.values()), new HashMap<>(classNodesModified));
                 System.out.println(customTransformer.getRight().getClass().getSimpleName() + " done in " + (System.currentTimeMillis() - remapTime) + " milliseconds.");
             }
@@ -679,30 +908,71 @@ public class KilnPlugin implements Plugin<Project> {
             System.out.println("Remapping and outputting.");
             long remapTime = System.currentTimeMillis();
 
-            for(Map.Entry<String, ClassNode> entry : classNodesModified.entrySet()) {
-                File file = classPaths.get(entry.getKey());
+            ExecutorService executor = Util.createExecutor();
+            try {
+                List<Pair<String, Future<File>>> results = new ArrayList<>();
+                for(String className : classHashes.keySet()) {
+                    File file = classPaths.get(className);
+                    ClassNode classNode = classNodesModified.get(className);
+
+                    results.add(new Pair<>(className, executor.submit(() -> {
+                        ClassWriter writer = new ClassWriter(0);
+                        ClassVisitor visitor = new ClassRemapper(writer, realRemapper);
+                        for (int i = visitorTransformers.size() - 1; i >= 0; i--) {
+                            visitor = visitorTransformers.get(i).transform(className, visitor);
+                        }
+
+                        if (classNode != null) {
+                            classNode.accept(visitor);
+                        } else {
+                            new ClassReader(Files.readAllBytes(file.toPath())).accept(visitor, 0);
+                        }
 
-                ClassNode classNode = entry.getValue();
-                ClassWriter writer = new ClassWriter(0);
-                ClassVisitor visitor = new ClassRemapper(writer, realRemapper);
-                classNode.accept(visitor);
-                try {
-                    File file2 = new File(file.getAbsolutePath().replace("\\", "/").replace("/classes/", "/classesObf/"));
-                    file2.getParentFile().mkdirs();
-                    OutputStream outputStream = new FileOutputStream(file2);
-                    outputStream.write(writer.toByteArray());
-                    outputStream.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
+                        File file2 = getObfFile(file);
+                        file2.getParentFile().mkdirs();
+                        Files.write(file2.toPath(), writer.toByteArray());
+                        return file2;
+                    })));
+                }
+
+                for (Pair<String, Future<File>> result : results) {
+                    try {
+                        fingerprints.put(result.getLeft(), classHashes.get(result.getLeft()), result.getRight().get(), classHeaders.get(result.getLeft()));
+                    } catch (ExecutionException e) {
+                        e.getCause().printStackTrace();
+                    }
                 }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } finally {
+                executor.shutdownNow();
             }
 
+            fingerprints.retain(classPaths.keySet());
+            fingerprints.save();
+
             System.out.println("Done remapping in " + (System.currentTimeMillis() - remapTime) + " milliseconds! (" + (System.currentTimeMillis() - startTime) + " milliseconds total)");
         }
 
     }
 
-    public void addAllMappingsProvider(IMappingsProvider mappingsProvider, boolean prefix) {
+    private static class Ancestry {
+
+        private final List<String> classes;
+        private final String version;
+
+        private Ancestry(List<String> classes, String version) {
+            this.classes = classes;
+            this.version = version;
+        }
+
+    }
+
+    public synchronized void addAllMappingsProvider(IMappingsProvider mappingsProvider, boolean prefix) {
+        if (containsProvider(this.allMappingsProviders, mappingsProvider)) {
+            return;
+        }
         this.allMappingsProviders.add(new Pair<>(mappingsProvider, prefix));
     }
 
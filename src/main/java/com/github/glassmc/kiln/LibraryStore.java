@@ -0,0 +1,65 @@
+package com.github.glassmc.kiln;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Libraries and natives of every version, stored once by their SHA-1 and linked into the version directories.
+ */
+public class LibraryStore {
+
+    private static final Map<String, Object> locks = new ConcurrentHashMap<>();
+
+    private final File root;
+
+    public LibraryStore(File root) {
+        this.root = root;
+    }
+
+    /**
+     * Makes {@code target} a copy of the file at {@code url}, downloading it only if it isn't stored yet.
+     * Without a checksum the file can't be stored and is downloaded straight to {@code target}.
+     */
+    public void install(URL url, String sha1, long size, File target) throws IOException {
+        if (sha1 == null) {
+            Util.download(url, target, null);
+            return;
+        }
+
+        File stored = new File(this.root, sha1.substring(0, 2) + "/" + sha1);
+        // versions set up in parallel share libraries, also when they are set up by different workers
+        Util.withFileLock(new File(stored.getAbsolutePath() + ".lock"), locks.computeIfAbsent(sha1, k -> new Object()), () -> {
+            if (!stored.exists() || (size >= 0 && stored.length() != size)) {
+                Util.download(url, stored, sha1);
+
+                if (size >= 0 && stored.length() != size) {
+                    stored.delete();
+                    throw new IOException("Size mismatch for " + url);
+                }
+            }
+            return null;
+        });
+
+        link(stored, target);
+    }
+
+    /**
+     * Hard links {@code target} to {@code source}, falling back to a copy where links aren't supported.
+     */
+    public static void link(File source, File target) throws IOException {
+        target.getParentFile().mkdirs();
+        Files.deleteIfExists(target.toPath());
+
+        try {
+            Files.createLink(target.toPath(), source.toPath());
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+}
@@ -0,0 +1,39 @@
+package com.github.glassmc.kiln;
+
+import com.github.glassmc.kiln.mappings.IMappingsProvider;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shared by every project of a build, the mappings provider of each Minecraft dependency is loaded once and
+ * handed to every project that depends on it. The download and remapping normally already happened in a
+ * setupMinecraft worker, so this mostly reads the compiled mappings from the kiln cache.
+ */
+public abstract class MinecraftSetupService implements BuildService<BuildServiceParameters.None> {
+
+    private final Map<String, Object> locks = new ConcurrentHashMap<>();
+    private final Map<String, Pair<IMappingsProvider, File>> minecraft = new ConcurrentHashMap<>();
+
+    public Pair<IMappingsProvider, File> getMinecraft(File pluginCache, String environment, String version, String mappings, String mappingsVersion, boolean runtime) {
+        String key = environment + ":" + version + ":" + mappings + ":" + mappingsVersion + ":" + runtime;
+
+        Pair<IMappingsProvider, File> result = this.minecraft.get(key);
+        if (result != null) {
+            return result;
+        }
+
+        synchronized (this.locks.computeIfAbsent(key, k -> new Object())) {
+            result = this.minecraft.get(key);
+            if (result == null) {
+                result = Util.setupDependency(pluginCache, environment, version, mappings, mappingsVersion, runtime);
+                this.minecraft.put(key, result);
+            }
+            return result;
+        }
+    }
+
+}
@@ -1,8 +1,17 @@
 package com.github.glassmc.kiln;
 
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.*;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
 import java.util.*;
 
 @SuppressWarnings("unused")
@@ -10,28 +19,41 @@ public class MixinRemapper extends CustomTransformer {
 
     private final Map<String, String> mixinClasses = new HashMap<>();
 
+    /**
+     * Updates the mixin index, a changed mixin changes how the classes calling into it are remapped.
+     */
+    @Override
+    public Set<String> getReferenceDependencies(Set<String> changedClasses) {
+        Set<String> previousMixins = this.updateIndex(changedClasses);
+
+        Set<String> dependencies = new HashSet<>();
+        for (String className : changedClasses) {
+            if (previousMixins.contains(className) || mixinClasses.containsKey(className)) {
+                dependencies.add(className);
+            }
+        }
+        return dependencies;
+    }
+
+    /**
+     * Targets come from the index and their members from the mappings, so no unchanged class has to be parsed.
+     */
+    @Override
+    public Set<String> getContextClasses(Set<String> modifiedClasses) {
+        return Collections.emptySet();
+    }
+
     @Override
     public void map(List<ClassNode> context, Map<String, ClassNode> classNodes) {
         if (classNodes.isEmpty()) {
             return;
         }
 
-        for (ClassNode classNode : context) {
-            if (classNode.invisibleAnnotations != null) {
-                for (AnnotationNode annotationNode : classNode.invisibleAnnotations) {
-                    if (annotationNode.desc.equals("Lorg/spongepowered/asm/mixin/Mixin;")) {
-                        if (annotationNode.values != null) {
-                            List<Object> values = (List<Object>) annotationNode.values.get(annotationNode.values.indexOf("value") + 1);
-                            if (values.get(0) instanceof Type) {
-                                mixinClasses.put(classNode.name, ((Type) values.get(0)).getClassName().replace(".", "/"));
-                            }
-                        }
-                    }
-                }
+        for(String className : classNodes.keySet()) {
+            if (this.getMixinClass(className) == null) {
+                continue;
             }
-        }
 
-        for(String className : classNodes.keySet()) {
             ClassNode classNode = classNodes.get(className);
 
             if (classNode.invisibleAnnotations != null) {
@@ -188,7 +210,15 @@ public class MixinRemapper extends CustomTransformer {
             }
         }
 
+        if (mixinClasses.isEmpty()) {
+            return;
+        }
+
         for (String className : classNodes.keySet()) {
+            if (!this.referencesMixin(className)) {
+                continue;
+            }
+
             for (MethodNode methodNode : classNodes.get(className).methods) {
                 for(AbstractInsnNode node : methodNode.instructions.toArray()) {
                     if(node instanceof FieldInsnNode) {
@@ -208,6 +238,113 @@ public class MixinRemapper extends CustomTransformer {
         }
     }
 
+    /**
+     * Rebuilds the mixin to target index and returns the mixins of the previous build. Only the annotations of changed
+     * classes are read when an index from a previous build exists, the targets of unchanged mixins are taken from it.
+     */
+    private Set<String> updateIndex(Set<String> changedClasses) {
+        File indexFile = this.getCacheDirectory() == null ? null : new File(this.getCacheDirectory(), "mixins.properties");
+        Properties index = indexFile == null ? null : readIndex(indexFile);
+
+        mixinClasses.clear();
+        Set<String> previousMixins = new HashSet<>();
+        Collection<String> scannedClasses;
+        if (index == null) {
+            scannedClasses = this.getHeaders().keySet();
+        } else {
+            previousMixins.addAll(index.stringPropertyNames());
+            for (String mixinClass : previousMixins) {
+                if (this.getHeaders().containsKey(mixinClass) && !changedClasses.contains(mixinClass)) {
+                    mixinClasses.put(mixinClass, index.getProperty(mixinClass));
+                }
+            }
+            scannedClasses = changedClasses;
+        }
+
+        for (String className : scannedClasses) {
+            String target = this.readMixinTarget(className);
+            if (target != null) {
+                mixinClasses.put(className, target);
+            }
+        }
+
+        if (indexFile != null) {
+            writeIndex(indexFile, mixinClasses);
+        }
+        return previousMixins;
+    }
+
+    /**
+     * Reads only the class annotations of the compiled class to find the target of its mixin annotation.
+     */
+    private String readMixinTarget(String className) {
+        ClassReader classReader = this.getClassReader(className);
+        if (classReader == null) {
+            return null;
+        }
+
+        List<AnnotationNode> annotations = new ArrayList<>();
+        classReader.accept(new ClassVisitor(Opcodes.ASM9) {
+
+            @Override
+            public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+                AnnotationNode annotationNode = new AnnotationNode(descriptor);
+                annotations.add(annotationNode);
+                return annotationNode;
+            }
+
+        }, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        return getMixinTarget(annotations);
+    }
+
+    private static String getMixinTarget(List<AnnotationNode> annotations) {
+        String target = null;
+        for (AnnotationNode annotationNode : annotations) {
+            if (annotationNode.desc.equals("Lorg/spongepowered/asm/mixin/Mixin;") && annotationNode.values != null) {
+                List<Object> values = (List<Object>) annotationNode.values.get(annotationNode.values.indexOf("value") + 1);
+                if (values.get(0) instanceof Type) {
+                    target = ((Type) values.get(0)).getClassName().replace(".", "/");
+                }
+            }
+        }
+        return target;
+    }
+
+    private static Properties readIndex(File indexFile) {
+        if (!indexFile.exists()) {
+            return null;
+        }
+
+        Properties index = new Properties();
+        try (InputStream inputStream = Files.newInputStream(indexFile.toPath())) {
+            index.load(inputStream);
+            return index;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static void writeIndex(File indexFile, Map<String, String> mixinClasses) {
+        Properties index = new Properties();
+        index.putAll(mixinClasses);
+
+        indexFile.getParentFile().mkdirs();
+        try (OutputStream outputStream = Files.newOutputStream(indexFile.toPath())) {
+            index.store(outputStream, null);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Whether the constant pool of the compiled class contains a mixin class, only those can have instructions to remap.
+     */
+    private boolean referencesMixin(String className) {
+        ClassHeader classHeader = this.getHeaders() == null ? null : this.getHeaders().get(className);
+        return classHeader == null || !Collections.disjoint(classHeader.getReferences(), mixinClasses.keySet());
+    }
+
     private String mapMethodName(String className, String methodName, String methodDesc) {
         String mixinClass = this.getMixinClass(className);
 
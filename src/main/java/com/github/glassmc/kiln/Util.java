@@ -19,13 +19,20 @@ import com.github.glassmc.kiln.internalremapper.Remapper;
 import java.io.*;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.SimpleFileVisitor;
-import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.JarOutputStream;
@@ -37,13 +44,34 @@ import java.util.zip.ZipOutputStream;
 
 public class Util {
 
-    private static JSONObject versions;
+    private static final Object versionsLock = new Object();
+    private static Map<String, JSONObject> versions;
     private static final Map<String, JSONObject> versionsById = new HashMap<>();
+    private static final Object mappingsIndexLock = new Object();
+    private static JSONObject mappingsIndex;
 
-    public static void minecraft(String id, String version, String mappingsProviderId, String mappingsVersion, boolean runtime) {
-        KilnPlugin plugin = KilnPlugin.getInstance();
-        File pluginCache = plugin.getCache();
+    private static final Map<String, Object> versionLocks = new ConcurrentHashMap<>();
 
+    public static File minecraft(KilnPlugin plugin, String id, String version, String mappingsProviderId, String mappingsVersion, boolean runtime) {
+        Pair<IMappingsProvider, File> minecraft = plugin.getSetupService().getMinecraft(plugin.getCache(), id, version, mappingsProviderId, mappingsVersion, runtime);
+        plugin.addMappingsProvider(minecraft.getLeft(), false);
+        return minecraft.getRight();
+    }
+
+    /**
+     * Sets up the mappings provider and the mapped jar of a version, use {@link MinecraftSetupService} to only do it once per build.
+     */
+    public static Pair<IMappingsProvider, File> setupDependency(File pluginCache, String id, String version, String mappingsProviderId, String mappingsVersion, boolean runtime) {
+        // one version is set up at a time, also across the forked setup workers, different versions can be set up in parallel
+        File lockFile = new File(pluginCache, "minecraft/locks/" + version + ".lock");
+        try {
+            return withFileLock(lockFile, versionLocks.computeIfAbsent(version, k -> new Object()), () -> setupDependencyLocked(pluginCache, id, version, mappingsProviderId, mappingsVersion, runtime));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static Pair<IMappingsProvider, File> setupDependencyLocked(File pluginCache, String id, String version, String mappingsProviderId, String mappingsVersion, boolean runtime) {
         IMappingsProvider mappingsProvider;
         switch(mappingsProviderId) {
             case "yarn":
@@ -59,17 +87,10 @@ public class Util {
             default:
                 mappingsProvider = new ObfuscatedMappingsProvider();
         }
-        plugin.addMappingsProvider(mappingsProvider, false);
 
         File minecraftFile = new File(pluginCache, "minecraft");
         File versionFile = new File(minecraftFile, version);
 
-        try {
-            FileUtils.copyURLToFile(new URL("https://raw.githubusercontent.com/glassmc/data/new-format/kiln/mappings.json"), new File(pluginCache, "mappings.json"));
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
         Util.setupMinecraft(id, version, mappingsVersion, pluginCache, new ObfuscatedMappingsProvider(), runtime);
 
         try {
@@ -78,39 +99,95 @@ public class Util {
             e.printStackTrace();
         }
 
-        Util.setupMinecraft(id, version, mappingsVersion, pluginCache, mappingsProvider, runtime);
+        File mappedJar = Util.setupMinecraft(id, version, mappingsVersion, pluginCache, mappingsProvider, runtime);
+        return new Pair<>(mappingsProvider, mappedJar);
+    }
+
+    /**
+     * Runs {@code action} holding {@code monitor} and an exclusive lock on {@code lockFile}, so other threads and other
+     * processes sharing the kiln cache wait for it.
+     */
+    public static <T> T withFileLock(File lockFile, Object monitor, IOAction<T> action) throws IOException {
+        synchronized (monitor) {
+            lockFile.getParentFile().mkdirs();
+            try (FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock ignored = channel.lock()) {
+                return action.run();
+            }
+        }
+    }
+
+    public interface IOAction<T> {
+
+        T run() throws IOException;
+
+    }
+
+    /**
+     * Where the jar of a version mapped with the given mappings is installed in the local maven.
+     */
+    public static File getMappedJar(File pluginCache, String environment, String version, String mappings, String mappingsVersion) {
+        File localMaven = new File(pluginCache, "minecraft/localMaven");
+        return new File(localMaven, "net/minecraft/" + environment + "-" + version + "/" + mappings + "-" + mappingsVersion + "/" + environment + "-" + version + "-" + mappings + "-" + mappingsVersion + ".jar");
     }
 
-    public static void setupMinecraft(String environment, String version, String mappingsVersion, File pluginCache, IMappingsProvider mappingsProvider, boolean runtime) {
+    /**
+     * Where the libraries of a version are installed in the local maven, only the libraries of this OS are included.
+     */
+    public static List<File> getMappedLibraries(File pluginCache, String version) throws IOException {
+        File localMaven = new File(pluginCache, "minecraft/localMaven");
+        List<File> mappedLibraries = new ArrayList<>();
+
+        for (Object element : getVersionManifest(pluginCache, version).getJSONArray("libraries")) {
+            JSONObject library = (JSONObject) element;
+            if (!library.getJSONObject("downloads").has("artifact") || !isAllowed(library)) {
+                continue;
+            }
+
+            mappedLibraries.add(getMappedLibrary(localMaven, library.getString("name").split(":"), version));
+        }
+        return mappedLibraries;
+    }
+
+    private static File getMappedLibrary(File localMaven, String[] id, String version) {
+        return new File(localMaven, id[0].replace(".", "/") + "/" + id[1] + "-" + version + "/" + id[2] + (id.length > 3 ? "-" + id[3] : "") + "/" + id[1] + "-" + version + "-" + id[2] + (id.length > 3 ? "-" + id[3] : "") + ".jar");
+    }
+
+    /**
+     * Remaps the jar of a version and installs it to the local maven, the mapped jar is returned.
+     * Its sources are only generated by {@link #generateSources(File)}.
+     */
+    public static File setupMinecraft(String environment, String version, String mappingsVersion, File pluginCache, IMappingsProvider mappingsProvider, boolean runtime) {
         File minecraftFile = new File(pluginCache, "minecraft");
         File versionFile = new File(minecraftFile, version);
         File versionJARFile = new File(versionFile, environment + "-" + version + ".jar");
         File localMaven = new File(minecraftFile, "localMaven");
-        File versionMappedJARFile = new File(localMaven, "net/minecraft/" + environment + "-" + version + "/" + mappingsProvider.getID() + "-" + mappingsVersion + "/" + environment + "-" + version + "-" + mappingsProvider.getID() + "-" + mappingsVersion + ".jar");
+        File versionMappedJARFile = getMappedJar(pluginCache, environment, version, mappingsProvider.getID(), mappingsVersion);
 
         try {
-            JSONObject versionManifest = getVersionManifest(version);
+            JSONObject versionManifest = getVersionManifest(pluginCache, version);
 
-            List<String> prefixClasses = new ArrayList<>();
+            Set<String> prefixClasses = new HashSet<>();
             List<String[]> dependencies = new ArrayList<>();
 
             if(environment.equals("client")) {
                 File versionLibraries = new File(versionFile, "libraries");
                 File versionNatives = new File(versionFile, "natives");
                 File assets = new File(versionFile, "assets");
+                LibraryStore libraryStore = new LibraryStore(new File(minecraftFile, "libraryStore"));
 
                 if (!versionLibraries.exists()) {
                     System.out.printf("Downloading %s libraries...%n", version);
-                    downloadLibraries(versionManifest, versionLibraries);
+                    downloadLibraries(versionManifest, versionLibraries, libraryStore);
                     mapLibraries(versionManifest, versionLibraries, localMaven, version);
                 }
 
                 if (!versionNatives.exists()) {
                     System.out.printf("Downloading %s natives...%n", version);
-                    downloadNatives(versionManifest, versionNatives);
+                    downloadNatives(versionManifest, versionNatives, libraryStore);
                 }
 
-                if (!assets.exists() && runtime) {
+                if (!new File(assets, ".complete").exists() && runtime) {
                     System.out.printf("Downloading %s assets...%n", version);
                     downloadAssets(versionManifest, assets);
                 }
@@ -133,14 +210,8 @@ public class Util {
                 for (File mappedLibrary : Objects.requireNonNull(versionLibraries.listFiles())) {
                     if (!mappedLibrary.getName().endsWith(".jar")) continue;
 
-                    JarFile jarFile = new JarFile(mappedLibrary);
-                    Enumeration<JarEntry> entries = jarFile.entries();
-
-                    while (entries.hasMoreElements()) {
-                        JarEntry entry = entries.nextElement();
-                        if (entry.getName().endsWith(".class")) {
-                            prefixClasses.add(entry.getName().replace(".class", ""));
-                        }
+                    try (JarFile jarFile = new JarFile(mappedLibrary)) {
+                        addClassNames(jarFile, prefixClasses);
                     }
 
                     dependencies.add(libraries.get(mappedLibrary.getName()).split(":"));
@@ -155,6 +226,8 @@ public class Util {
                 }
 
                 JarFile input = new JarFile(versionJARFile);
+                Set<String> vanillaClasses = new HashSet<>();
+                addClassNames(input, vanillaClasses);
 
                 System.out.printf("Remapping %s jar with %s mappings...%n", version, mappingsProvider.getID());
 
@@ -165,7 +238,7 @@ public class Util {
                     @Override
                     public String map(String name) {
                         String mapped = remapper.map(name);
-                        if ((input.getJarEntry(name + ".class") != null || prefixClasses.contains(mapped)) && mappingsProvider.getVersion() != null) {
+                        if (mappingsProvider.getVersion() != null && (vanillaClasses.contains(name) || prefixClasses.contains(mapped))) {
                             return mapped;
                         } else {
                             return name;
@@ -195,75 +268,8 @@ public class Util {
                 };
 
                 versionMappedJARFile.getParentFile().mkdirs();
-                JarOutputStream outputStream = new JarOutputStream(new BufferedOutputStream(Files.newOutputStream(versionMappedJARFile.toPath())));
-
-                Enumeration<JarEntry> entries = input.entries();
-                while(entries.hasMoreElements()) {
-                    JarEntry entry = entries.nextElement();
-                    if(!entry.isDirectory()) {
-                        if(entry.getName().endsWith(".class")) {
-                            ClassReader classReader = new ClassReader(IOUtils.readFully(input.getInputStream(entry), (int) entry.getSize()));
-                            ClassWriter writer = new ClassWriter(0);
-                            ClassVisitor visitor = new ClassRemapper(writer, remapperWrapper);
-                            classReader.accept(visitor, 0);
-
-                            outputStream.putNextEntry(new JarEntry(remapperWrapper.map(entry.getName().replace(".class", "")) + ".class"));
-                            outputStream.write(writer.toByteArray());
-                            outputStream.closeEntry();
-                        } else if(!entry.getName().contains("META-INF")) {
-                            outputStream.putNextEntry(new JarEntry(entry.getName()));
-                            outputStream.write(IOUtils.readFully(input.getInputStream(entry), (int) entry.getSize()));
-                            outputStream.closeEntry();
-                        }
-                    }
-                }
-                outputStream.close();
-
-                FernflowerDecompiler fernflowerDecompiler = new FernflowerDecompiler();
-                DecompilationListener decompilationListener = new DecompilationListener() {
-                    @Override
-                    public void fileDecompiled(List<String> sourceClassPaths, String outputPath) {
-
-                    }
-
-                    @Override
-                    public void decompilationFailed(List<String> sourceClassPaths, String message) {
-
-                    }
-
-                    @Override
-                    public void decompilationProcessComplete() {
-
-                    }
-
-                    @Override
-                    public boolean isCancelled() {
-                        return false;
-                    }
-                };
-
-                File output = new File(versionMappedJARFile.getAbsolutePath().replace(".jar", ""));
-                output.mkdirs();
-
-                try {
-                    fernflowerDecompiler.decompileArchive(versionMappedJARFile.toPath(), output.toPath(), decompilationListener);
-
-                    JarFile jarFile = new JarFile(versionMappedJARFile);
-                    Enumeration<JarEntry> entries1 = jarFile.entries();
-                    while (entries1.hasMoreElements()) {
-                        JarEntry entry = entries1.nextElement();
-
-                        if (!entry.getName().endsWith(".class")) {
-                            File file = new File(output, entry.getName());
-                            file.getParentFile().mkdirs();
-                            FileUtils.writeByteArrayToFile(file, IOUtils.toByteArray(jarFile.getInputStream(entry)));
-                        }
-                    }
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-
-                pack(output.toPath(), new File(output.getAbsolutePath() + "-sources.jar").toPath());
+                remapJar(input, versionMappedJARFile, remapperWrapper);
+                input.close();
 
                 File versionPom = new File(versionMappedJARFile.getParentFile(), environment + "-" + version + "-" + mappingsProvider.getID() + "-" + mappingsVersion + ".pom");
                 StringBuilder string =
@@ -370,12 +376,10 @@ public class Util {
                         "}\n");
 
                 FileUtils.writeStringToFile(versionModule, string.toString(), StandardCharsets.UTF_8);
-
-                FileUtils.deleteDirectory(output);
             } else if (runtime) {
                 File assets = new File(versionFile, "assets");
 
-                if (!assets.exists()) {
+                if (!new File(assets, ".complete").exists()) {
                     System.out.printf("Downloading %s assets...%n", version);
                     downloadAssets(versionManifest, assets);
                 }
@@ -383,30 +387,167 @@ public class Util {
         } catch (IOException e) {
             e.printStackTrace();
         }
+
+        return versionMappedJARFile;
     }
 
-    public static void pack(final Path folder, final Path zipFilePath) throws IOException {
-        try (
-                FileOutputStream fos = new FileOutputStream(zipFilePath.toFile());
-                ZipOutputStream zos = new ZipOutputStream(fos)
-        ) {
-            Files.walkFileTree(folder, new SimpleFileVisitor<Path>() {
-                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                    zos.putNextEntry(new ZipEntry(folder.relativize(file).toString()));
-                    Files.copy(file, zos);
-                    zos.closeEntry();
-                    return FileVisitResult.CONTINUE;
-                }
+    public static File getSourcesJar(File mappedJar) {
+        return new File(mappedJar.getAbsolutePath().replace(".jar", "") + "-sources.jar");
+    }
 
-                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
-                    zos.putNextEntry(new ZipEntry(folder.relativize(dir).toString() + "/"));
-                    zos.closeEntry();
-                    return FileVisitResult.CONTINUE;
+    /**
+     * Decompiles a mapped jar into its sources jar next to it, unless that was already done.
+     */
+    public static void generateSources(File mappedJar) {
+        File sourcesJARFile = getSourcesJar(mappedJar);
+        if (sourcesJARFile.exists() || !mappedJar.exists()) {
+            return;
+        }
+
+        FernflowerDecompiler fernflowerDecompiler = new FernflowerDecompiler();
+        DecompilationListener decompilationListener = new DecompilationListener() {
+            @Override
+            public void fileDecompiled(List<String> sourceClassPaths, String outputPath) {
+
+            }
+
+            @Override
+            public void decompilationFailed(List<String> sourceClassPaths, String message) {
+
+            }
+
+            @Override
+            public void decompilationProcessComplete() {
+
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return false;
+            }
+        };
+
+        // written under a temporary name so that an interrupted run isn't taken for a finished one
+        File part = new File(sourcesJARFile.getAbsolutePath() + ".part");
+
+        try (ZipOutputStream sources = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(part.toPath())));
+             JarFile jarFile = new JarFile(mappedJar)) {
+            System.out.printf("Decompiling %s...%n", mappedJar.getName());
+            fernflowerDecompiler.decompileArchiveParallel(mappedJar.toPath(), sources, getThreadCount(), decompilationListener, new FernflowerDecompiler.ProgressListener() {
+
+                private int previousPercent = 0;
+
+                @Override
+                public synchronized void progress(int completed, int total) {
+                    int percent = (int) Math.ceil((double) completed / total * 100);
+                    if (percent > previousPercent) {
+                        printProgress(percent);
+                        previousPercent = percent;
+                    }
                 }
+
             });
+            System.out.println();
+
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+
+                if (!entry.getName().endsWith(".class") && !entry.isDirectory()) {
+                    sources.putNextEntry(new ZipEntry(entry.getName()));
+                    try (InputStream inputStream = jarFile.getInputStream(entry)) {
+                        IOUtils.copy(inputStream, sources);
+                    }
+                    sources.closeEntry();
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            part.delete();
+            return;
+        }
+
+        try {
+            Files.move(part.toPath(), sourcesJARFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            e.printStackTrace();
         }
     }
 
+    private static void addClassNames(JarFile jarFile, Set<String> classNames) {
+        Enumeration<JarEntry> entries = jarFile.entries();
+        while (entries.hasMoreElements()) {
+            String name = entries.nextElement().getName();
+            if (name.endsWith(".class")) {
+                classNames.add(name.substring(0, name.length() - ".class".length()));
+            }
+        }
+    }
+
+    private static void remapJar(JarFile input, File output, Remapper remapper) throws IOException {
+        ExecutorService executor = createExecutor();
+
+        try (JarOutputStream outputStream = new JarOutputStream(new BufferedOutputStream(Files.newOutputStream(output.toPath())))) {
+            // at most two entries per thread are in flight, results are written in entry order as soon as they are ready
+            // so the output jar is the same regardless of thread count and finished entries don't pile up in memory
+            int window = getThreadCount() * 2;
+            Deque<Future<Pair<String, byte[]>>> results = new ArrayDeque<>();
+
+            Enumeration<JarEntry> entries = input.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                if (entry.isDirectory() || (!entry.getName().endsWith(".class") && entry.getName().contains("META-INF"))) {
+                    continue;
+                }
+
+                if (results.size() >= window) {
+                    writeEntry(outputStream, results.poll().get());
+                }
+                results.add(executor.submit(() -> remapEntry(input, entry, remapper)));
+            }
+
+            while (!results.isEmpty()) {
+                writeEntry(outputStream, results.poll().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void writeEntry(JarOutputStream outputStream, Pair<String, byte[]> remapped) throws IOException {
+        outputStream.putNextEntry(new JarEntry(remapped.getLeft()));
+        outputStream.write(remapped.getRight());
+        outputStream.closeEntry();
+    }
+
+    private static Pair<String, byte[]> remapEntry(JarFile input, JarEntry entry, Remapper remapper) throws IOException {
+        byte[] data = IOUtils.readFully(input.getInputStream(entry), (int) entry.getSize());
+
+        if (!entry.getName().endsWith(".class")) {
+            return new Pair<>(entry.getName(), data);
+        }
+
+        ClassReader classReader = new ClassReader(data);
+        ClassWriter writer = new ClassWriter(0);
+        ClassVisitor visitor = new ClassRemapper(writer, remapper);
+        classReader.accept(visitor, 0);
+
+        return new Pair<>(remapper.map(entry.getName().replace(".class", "")) + ".class", writer.toByteArray());
+    }
+
+    public static int getThreadCount() {
+        return Math.max(1, Integer.getInteger("kiln.threads", Runtime.getRuntime().availableProcessors()));
+    }
+
+    public static ExecutorService createExecutor() {
+        return Executors.newFixedThreadPool(getThreadCount());
+    }
+
     private static void mapLibraries(JSONObject versionManifest, File versionLibraries, File localMaven, String version) throws IOException {
         Map<String, String> libraries = new HashMap<>();
 
@@ -427,12 +568,12 @@ public class Util {
             if (!library.getName().endsWith(".jar")) continue;
 
             String[] id = libraries.get(library.getName()).split(":");
-            File file = new File(localMaven, id[0].replace(".", "/") + "/" + id[1] + "-" + version + "/" + id[2] + (id.length > 3 ? "-" + id[3] : "") + "/" + id[1] + "-" + version + "-" + id[2] + (id.length > 3 ? "-" + id[3] : "") + ".jar");
+            File file = getMappedLibrary(localMaven, id, version);
             //System.out.println(library.getAbsolutePath());
             //System.out.println(file.getAbsolutePath());
             file.getParentFile().mkdirs();
 
-            FileUtils.copyFile(library, file);
+            LibraryStore.link(library, file);
             //JarOutputStream jarOutputStream = new JarOutputStream(Files.newOutputStream(file.toPath()));
 
             //JarFile jarFile = new JarFile(library);
@@ -465,13 +606,12 @@ public class Util {
         }
     }
 
-    private static void downloadAssets(JSONObject versionManifest, File assets) {
-        String id = versionManifest.getJSONObject("assetIndex").getString("id");
-        String assetIndexUrl = versionManifest.getJSONObject("assetIndex").getString("url");
+    static void downloadAssets(JSONObject versionManifest, File assets) {
+        JSONObject assetIndex = versionManifest.getJSONObject("assetIndex");
+        String id = assetIndex.getString("id");
         try {
             File file = new File(assets, "indexes/" + id + ".json");
-            file.getParentFile().mkdirs();
-            FileUtils.copyURLToFile(new URL(assetIndexUrl), file);
+            download(new URL(assetIndex.getString("url")), file, assetIndex.optString("sha1", null));
 
             String fileContents = FileUtils.readFileToString(file, StandardCharsets.UTF_8);
             JSONObject json = new JSONObject(fileContents);
@@ -481,68 +621,297 @@ public class Util {
             File objectsFile = new File(assets, "objects");
             objectsFile.mkdirs();
 
-            int i = 0;
-
-            int previousPercent = 0;
-
-            String url = "http://resources.download.minecraft.net";
-            for (Map.Entry<String, Object> entry : objects.toMap().entrySet()) {
-                Map<String, Object> value = (Map<String, Object>) entry.getValue();
-                String hash = (String) value.get("hash");
-                FileUtils.copyURLToFile(new URL(url + "/" + hash.substring(0, 2) + "/" + hash), new File(objectsFile, hash.substring(0, 2) + "/" + hash));
+            // objects left over from an earlier, interrupted run are checked before downloading them again
+            String url = System.getProperty("kiln.assetsUrl", "http://resources.download.minecraft.net");
+            ExecutorService executor = Executors.newFixedThreadPool(getDownloadThreadCount());
+            try {
+                List<Future<?>> results = new ArrayList<>();
+                for (String name : objects.keySet()) {
+                    JSONObject object = objects.getJSONObject(name);
+                    String hash = object.getString("hash");
+                    long size = object.getLong("size");
+                    File objectFile = new File(objectsFile, hash.substring(0, 2) + "/" + hash);
+
+                    results.add(executor.submit(() -> {
+                        // the object has been checked here already, so it's fetched without hashing it again
+                        if (objectFile.length() != size || !hash.equals(sha1(objectFile))) {
+                            fetch(new URL(url + "/" + hash.substring(0, 2) + "/" + hash), objectFile, hash);
+                        }
+                        return null;
+                    }));
+                }
 
-                double percent = (double) i / objects.length();
-                if (Math.ceil(percent * 100) > previousPercent) {
-                    StringBuilder stringBuilder = new StringBuilder("[");
-                    for (int j = 0; j <  (int) Math.ceil(20 * percent); j++) {
-                        stringBuilder.append("=");
-                    }
-                    for (int j = (int) Math.ceil(20 * percent); j < 20; j++) {
-                        stringBuilder.append(" ");
+                // a failed object doesn't stop the others, every failure is reported once all of them are done
+                List<Throwable> failures = new ArrayList<>();
+                int previousPercent = 0;
+                for (int i = 0; i < results.size(); i++) {
+                    try {
+                        results.get(i).get();
+                    } catch (ExecutionException e) {
+                        failures.add(e.getCause());
                     }
-                    stringBuilder.append("] ").append((int) Math.ceil(percent * 100)).append("%\r");
 
-                    System.out.write(stringBuilder.toString().getBytes(StandardCharsets.UTF_8));
-                    System.out.flush();
+                    int percent = (int) Math.ceil((double) (i + 1) / results.size() * 100);
+                    if (percent > previousPercent) {
+                        printProgress(percent);
+                        previousPercent = percent;
+                    }
+                }
 
-                    previousPercent = (int) Math.ceil(percent * 100);
+                if (!failures.isEmpty()) {
+                    System.out.println();
+                    IOException exception = new IOException(failures.size() + " of " + results.size() + " asset objects failed to download");
+                    for (Throwable failure : failures) {
+                        exception.addSuppressed(failure);
+                    }
+                    throw exception;
                 }
-                i++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            } finally {
+                executor.shutdownNow();
             }
 
+            FileUtils.touch(new File(assets, ".complete"));
             System.out.println();
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
-    public static JSONObject getVersionManifest(String id) throws JSONException, IOException {
-        if(versions == null) {
-            URL versionsURL = new URL("https://launchermeta.mojang.com/mc/game/version_manifest.json");
-            versions = new JSONObject(IOUtils.toString(versionsURL, StandardCharsets.UTF_8));
+    /**
+     * Downloads {@code url} to {@code file} unless it already has the given SHA-1. The download goes to a
+     * {@code .part} file first, an interrupted download is resumed from there with a range request.
+     */
+    public static void download(URL url, File file, String sha1) throws IOException {
+        if (sha1 != null && file.exists() && sha1.equals(sha1(file))) {
+            return;
+        }
+
+        fetch(url, file, sha1);
+    }
+
+    /**
+     * Like {@link #download}, but for callers that already know {@code file} is missing or out of date.
+     */
+    private static void fetch(URL url, File file, String sha1) throws IOException {
+        File part = new File(file.getAbsolutePath() + ".part");
+        file.getParentFile().mkdirs();
+
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(30000);
+        connection.setReadTimeout(30000);
+        if (part.exists() && part.length() > 0) {
+            connection.setRequestProperty("Range", "bytes=" + part.length() + "-");
+        }
+
+        int responseCode = connection.getResponseCode();
+        if (responseCode == 416) {
+            // the part file is complete or doesn't belong to this file anymore
+            connection.disconnect();
+            part.delete();
+            fetch(url, file, sha1);
+            return;
+        } else if (responseCode != HttpURLConnection.HTTP_OK && responseCode != HttpURLConnection.HTTP_PARTIAL) {
+            connection.disconnect();
+            throw new IOException("Server returned " + responseCode + " for " + url);
+        }
+
+        try (InputStream inputStream = connection.getInputStream();
+             OutputStream outputStream = new FileOutputStream(part, responseCode == HttpURLConnection.HTTP_PARTIAL)) {
+            IOUtils.copy(inputStream, outputStream);
+        }
+
+        if (sha1 != null && !sha1.equals(sha1(part))) {
+            part.delete();
+            throw new IOException("Checksum mismatch for " + url);
+        }
+
+        Files.move(part.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public static String sha1(File file) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+
+        try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(file.toPath()))) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+
+            StringBuilder hash = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hash.append(String.format("%02x", b));
+            }
+            return hash.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    public static int getDownloadThreadCount() {
+        return Math.max(1, Integer.getInteger("kiln.downloadThreads", 8));
+    }
+
+    private static void printProgress(int percent) {
+        StringBuilder stringBuilder = new StringBuilder("[");
+        for (int j = 0; j < percent / 5; j++) {
+            stringBuilder.append("=");
+        }
+        for (int j = percent / 5; j < 20; j++) {
+            stringBuilder.append(" ");
+        }
+        stringBuilder.append("] ").append(percent).append("%\r");
+
+        System.out.print(stringBuilder);
+        System.out.flush();
+    }
+
+    /**
+     * The index of mapping URLs, revalidated at most once every {@code kiln.mappingsIndexTtl} minutes (60 by default).
+     */
+    public static JSONObject getMappingsIndex(File pluginCache) throws IOException {
+        synchronized (mappingsIndexLock) {
+            File file = new File(pluginCache, "mappings.json");
+            long ttl = Long.getLong("kiln.mappingsIndexTtl", 60) * 60 * 1000;
+
+            if (mappingsIndex == null || System.currentTimeMillis() - file.lastModified() > ttl) {
+                if (!file.exists() || System.currentTimeMillis() - file.lastModified() > ttl) {
+                    // a stale copy used because the server couldn't be reached is tried again next time
+                    if (downloadIfModified(new URL("https://raw.githubusercontent.com/glassmc/data/new-format/kiln/mappings.json"), file)) {
+                        file.setLastModified(System.currentTimeMillis());
+                    }
+                }
+                mappingsIndex = new JSONObject(FileUtils.readFileToString(file, StandardCharsets.UTF_8));
+            }
+
+            return mappingsIndex;
+        }
+    }
+
+    /**
+     * The manifest of a version, cached in the kiln cache forever since it never changes once released.
+     * The list of versions is only revalidated when a version isn't cached yet and isn't in the list already loaded.
+     */
+    public static JSONObject getVersionManifest(File pluginCache, String id) throws JSONException, IOException {
+        synchronized (versionsLock) {
+            if (versionsById.containsKey(id)) {
+                return versionsById.get(id);
+            }
+
+            File manifests = new File(pluginCache, "minecraft/manifests");
+            File versionManifestFile = new File(manifests, id + ".json");
+
+            if (!versionManifestFile.exists()) {
+                JSONObject versionInfo = versions != null ? versions.get(id) : null;
+                if (versionInfo == null) {
+                    // the daemon may have loaded the list before the version was released
+                    versions = readVersions(manifests);
+                    versionInfo = versions.get(id);
+                }
+
+                if (versionInfo == null) {
+                    throw new IOException("Unknown Minecraft version " + id);
+                }
+                if (KilnPlugin.isOffline()) {
+                    throw new IOException("The manifest of " + id + " isn't cached and Gradle is offline");
+                }
+
+                download(new URL(versionInfo.getString("url")), versionManifestFile, versionInfo.optString("sha1", null));
+            }
+
+            JSONObject versionManifest = new JSONObject(FileUtils.readFileToString(versionManifestFile, StandardCharsets.UTF_8));
+
+            versionsById.put(id, versionManifest);
+
+            return versionManifest;
         }
+    }
+
+    private static Map<String, JSONObject> readVersions(File manifests) throws IOException {
+        File versionsFile = new File(manifests, "version_manifest_v2.json");
+        downloadIfModified(new URL("https://launchermeta.mojang.com/mc/game/version_manifest_v2.json"), versionsFile);
 
-        if(versionsById.containsKey(id)) {
-            return versionsById.get(id);
+        Map<String, JSONObject> versions = new HashMap<>();
+        for (Object info : new JSONObject(FileUtils.readFileToString(versionsFile, StandardCharsets.UTF_8)).getJSONArray("versions")) {
+            versions.put(((JSONObject) info).getString("id"), (JSONObject) info);
         }
+        return versions;
+    }
 
-        JSONObject versionInfo = new JSONObject();
-        for(Object info : versions.getJSONArray("versions")) {
-            if(((JSONObject) info).getString("id").equals(id)) {
-                versionInfo = (JSONObject) info;
+    /**
+     * Revalidates {@code file} against {@code url} with the ETag and Last-Modified stored next to it.
+     * The cached file is kept as is when offline or when the server can't be reached, in which case false is returned.
+     */
+    public static boolean downloadIfModified(URL url, File file) throws IOException {
+        File validatorsFile = new File(file.getAbsolutePath() + ".validators");
+        Properties validators = new Properties();
+        if (file.exists() && validatorsFile.exists()) {
+            try (InputStream inputStream = Files.newInputStream(validatorsFile.toPath())) {
+                validators.load(inputStream);
             }
         }
 
-        String versionManifestString = versionInfo.getString("url");
-        URL versionManifestURL = new URL(versionManifestString);
-        JSONObject versionManifest = new JSONObject(IOUtils.toString(versionManifestURL, StandardCharsets.UTF_8));
+        if (KilnPlugin.isOffline()) {
+            if (!file.exists()) {
+                throw new IOException(file.getName() + " isn't cached and Gradle is offline");
+            }
+            return false;
+        }
+
+        try {
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setConnectTimeout(30000);
+            connection.setReadTimeout(30000);
+            if (validators.containsKey("etag")) {
+                connection.setRequestProperty("If-None-Match", validators.getProperty("etag"));
+            }
+            if (validators.containsKey("lastModified")) {
+                connection.setRequestProperty("If-Modified-Since", validators.getProperty("lastModified"));
+            }
+
+            int responseCode = connection.getResponseCode();
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                connection.disconnect();
+                return true;
+            } else if (responseCode != HttpURLConnection.HTTP_OK) {
+                connection.disconnect();
+                throw new IOException("Server returned " + responseCode + " for " + url);
+            }
 
-        versionsById.put(id, versionManifest);
+            File part = new File(file.getAbsolutePath() + ".part");
+            part.getParentFile().mkdirs();
+            try (InputStream inputStream = connection.getInputStream()) {
+                Files.copy(inputStream, part.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.move(part.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
 
-        return versionManifest;
+            validators.clear();
+            if (connection.getHeaderField("ETag") != null) {
+                validators.setProperty("etag", connection.getHeaderField("ETag"));
+            }
+            if (connection.getHeaderField("Last-Modified") != null) {
+                validators.setProperty("lastModified", connection.getHeaderField("Last-Modified"));
+            }
+            try (OutputStream outputStream = Files.newOutputStream(validatorsFile.toPath())) {
+                validators.store(outputStream, null);
+            }
+            return true;
+        } catch (IOException e) {
+            if (!file.exists()) {
+                throw e;
+            }
+            System.out.printf("Using cached %s (%s)%n", file.getName(), e);
+            return false;
+        }
     }
 
-    private static void downloadLibraries(JSONObject versionManifest, File versionLibraries) throws IOException {
+    private static void downloadLibraries(JSONObject versionManifest, File versionLibraries, LibraryStore libraryStore) throws IOException {
         for (Object element : versionManifest.getJSONArray("libraries")) {
             JSONObject library = (JSONObject) element;
 
@@ -551,46 +920,46 @@ public class Util {
                 continue;
             }
 
-            boolean allowed = true;
-
-            if (library.has("rules")) {
-                allowed = false;
-
-                String osName = "";
-                switch (SystemUtil.getOSType()) {
-                    case WINDOWS:
-                        osName = "windows";
-                        break;
-                    case LINUX:
-                        osName = "linux";
-                        break;
-                    case MAC:
-                        osName = "osx";
-                        break;
-                    case UNKNOWN:
-                        break;
-                }
-
-                for (Object item : library.getJSONArray("rules")) {
-                    JSONObject rule = (JSONObject) item;
-                    if (!rule.has("os") || (rule.has("os") && rule.getJSONObject("os").getString("name").equals(osName))) {
-                        allowed = rule.getString("action").equals("allow");
-                    }
-                }
+            if (isAllowed(library)) {
+                JSONObject artifact = downloads.getJSONObject("artifact");
+                String artifactURL = artifact.getString("url");
+                File libraryFile = new File(versionLibraries, artifactURL.substring(artifactURL.lastIndexOf("/") + 1));
+                libraryStore.install(new URL(artifactURL), artifact.optString("sha1", null), artifact.optLong("size", -1), libraryFile);
             }
+        }
+    }
 
-            if (allowed) {
-                String artifactURL = downloads.getJSONObject("artifact").getString("url");
-                File libraryFile = new File(versionLibraries, artifactURL.substring(artifactURL.lastIndexOf("/") + 1));
-                FileUtils.copyURLToFile(
-                        new URL(artifactURL),
-                        libraryFile
-                );
+    private static boolean isAllowed(JSONObject library) {
+        if (!library.has("rules")) {
+            return true;
+        }
+
+        String osName = "";
+        switch (SystemUtil.getOSType()) {
+            case WINDOWS:
+                osName = "windows";
+                break;
+            case LINUX:
+                osName = "linux";
+                break;
+            case MAC:
+                osName = "osx";
+                break;
+            case UNKNOWN:
+                break;
+        }
+
+        boolean allowed = false;
+        for (Object item : library.getJSONArray("rules")) {
+            JSONObject rule = (JSONObject) item;
+            if (!rule.has("os") || (rule.has("os") && rule.getJSONObject("os").getString("name").equals(osName))) {
+                allowed = rule.getString("action").equals("allow");
             }
         }
+        return allowed;
     }
 
-    private static void downloadNatives(JSONObject versionManifest, File versionNatives) throws IOException {
+    private static void downloadNatives(JSONObject versionManifest, File versionNatives, LibraryStore libraryStore) throws IOException {
         for(Object element : versionManifest.getJSONArray("libraries")) {
             JSONObject library = (JSONObject) element;
             String name = library.getString("name");
@@ -665,9 +1034,9 @@ public class Util {
                             continue;
                         }
 
-                        String url = classifiers.getJSONObject(nativesType).getString("url");
+                        JSONObject classifier = classifiers.getJSONObject(nativesType);
                         File downloadedJarFile = new File(versionNatives, library.getString("name").replace(":", ";") + ".jar");
-                        FileUtils.copyURLToFile(new URL(url), downloadedJarFile);
+                        libraryStore.install(new URL(classifier.getString("url")), classifier.optString("sha1", null), classifier.optLong("size", -1), downloadedJarFile);
 
                         JarFile jarFile = new JarFile(downloadedJarFile);
                         Enumeration<JarEntry> entries = jarFile.entries();
@@ -679,9 +1048,9 @@ public class Util {
                         }
                     } else {
                         JSONObject downloads = library.getJSONObject("downloads");
-                        String url = downloads.getJSONObject("artifact").getString("url");
+                        JSONObject artifact = downloads.getJSONObject("artifact");
                         File downloadedJarFile = new File(versionNatives, library.getString("name").replace(":", ";") + ".jar");
-                        FileUtils.copyURLToFile(new URL(url), downloadedJarFile);
+                        libraryStore.install(new URL(artifact.getString("url")), artifact.optString("sha1", null), artifact.optLong("size", -1), downloadedJarFile);
 
                         JarFile jarFile = new JarFile(downloadedJarFile);
                         Enumeration<JarEntry> entries = jarFile.entries();
@@ -704,6 +1073,7 @@ public class Util {
     public static boolean isValid(URL url) {
         try {
             HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestMethod("HEAD");
             return connection.getResponseCode() == HttpURLConnection.HTTP_OK;
         } catch (IOException e) {
             e.printStackTrace();
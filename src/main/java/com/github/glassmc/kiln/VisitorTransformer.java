@@ -0,0 +1,28 @@
+package com.github.glassmc.kiln;
+
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A transformer that works on the class while it is streamed into the remapper, so no class has to be kept as a tree.
+ * When only visitor transformers are registered, classes are read, transformed, remapped and written in a single pass.
+ * Transformers run in registration order, visitor transformers registered before a tree transformer run over the class
+ * trees instead, once the earlier tree transformers are done.
+ */
+public abstract class VisitorTransformer extends CustomTransformer {
+
+    /**
+     * Wraps {@code next} to transform the modified class {@code name}, before it is remapped.
+     * Called concurrently from the output threads.
+     */
+    public abstract ClassVisitor transform(String name, ClassVisitor next);
+
+    @Override
+    public final void map(List<ClassNode> context, Map<String, ClassNode> classNodes) {
+
+    }
+
+}
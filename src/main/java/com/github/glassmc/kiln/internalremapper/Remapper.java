@@ -36,12 +36,66 @@ import org.objectweb.asm.signature.SignatureReader;
 import org.objectweb.asm.signature.SignatureVisitor;
 import org.objectweb.asm.signature.SignatureWriter;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 public abstract class Remapper {
 
+    private static final int DESCRIPTOR_CACHE_SIZE = 16384;
+
+    private final Map<String, String> descriptorCache = new ConcurrentHashMap<>();
+
     public String mapDesc(final String descriptor) {
         if (descriptor.isEmpty()) return descriptor;
 
-        return mapType(Type.getType(descriptor)).getDescriptor();
+        return mapDescriptor(descriptor);
+    }
+
+    /**
+     * Remaps every class name in a field or method descriptor, the same instance is returned if none of them changes.
+     */
+    private String mapDescriptor(final String descriptor) {
+        if (descriptor.indexOf('L') == -1) {
+            return descriptor;
+        }
+
+        String remappedDescriptor = descriptorCache.get(descriptor);
+        if (remappedDescriptor != null) {
+            return remappedDescriptor;
+        }
+
+        StringBuilder stringBuilder = null;
+        int copied = 0;
+        int i = 0;
+        while (i < descriptor.length()) {
+            if (descriptor.charAt(i++) != 'L') {
+                continue;
+            }
+
+            int end = descriptor.indexOf(';', i);
+            String internalName = descriptor.substring(i, end);
+            String remappedInternalName = map(internalName);
+            if (remappedInternalName != null && !remappedInternalName.equals(internalName)) {
+                if (stringBuilder == null) {
+                    stringBuilder = new StringBuilder(descriptor.length() + 16);
+                }
+                stringBuilder.append(descriptor, copied, i).append(remappedInternalName);
+                copied = end;
+            }
+            i = end + 1;
+        }
+
+        if (stringBuilder == null) {
+            remappedDescriptor = descriptor;
+        } else {
+            remappedDescriptor = stringBuilder.append(descriptor, copied, descriptor.length()).toString();
+        }
+
+        if (descriptorCache.size() >= DESCRIPTOR_CACHE_SIZE) {
+            descriptorCache.clear();
+        }
+        descriptorCache.put(descriptor, remappedDescriptor);
+        return remappedDescriptor;
     }
 
     private Type mapType(final Type type) {
@@ -67,7 +121,11 @@ public abstract class Remapper {
         if (internalName == null) {
             return null;
         }
-        return mapType(Type.getObjectType(internalName)).getInternalName();
+        if (!internalName.isEmpty() && internalName.charAt(0) == '[') {
+            return mapDescriptor(internalName);
+        }
+        String remappedInternalName = map(internalName);
+        return remappedInternalName != null ? remappedInternalName : internalName;
     }
 
     public String[] mapTypes(final String[] internalNames) {
@@ -88,21 +146,7 @@ public abstract class Remapper {
     public String mapMethodDesc(final String methodDescriptor) {
         if (methodDescriptor.isEmpty()) return methodDescriptor;
 
-        if ("()V".equals(methodDescriptor)) {
-            return methodDescriptor;
-        }
-
-        StringBuilder stringBuilder = new StringBuilder("(");
-        for (Type argumentType : Type.getArgumentTypes(methodDescriptor)) {
-            stringBuilder.append(mapType(argumentType).getDescriptor());
-        }
-        Type returnType = Type.getReturnType(methodDescriptor);
-        if (returnType == Type.VOID_TYPE) {
-            stringBuilder.append(")V");
-        } else {
-            stringBuilder.append(')').append(mapType(returnType).getDescriptor());
-        }
-        return stringBuilder.toString();
+        return mapDescriptor(methodDescriptor);
     }
 
     public Object mapValue(final Object value) {
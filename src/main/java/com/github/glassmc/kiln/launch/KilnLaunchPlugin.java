@@ -1,18 +1,15 @@
 package com.github.glassmc.kiln.launch;
 
-import com.github.glassmc.kiln.KilnPlugin;
-import com.github.glassmc.kiln.Pair;
-import com.github.glassmc.kiln.Util;
-import com.github.glassmc.kiln.mappings.IMappingsProvider;
+import com.github.glassmc.kiln.task.SetupMinecraft;
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
+import org.gradle.api.Task;
 import org.gradle.api.artifacts.repositories.ArtifactRepository;
 import org.gradle.api.artifacts.repositories.MavenArtifactRepository;
-import org.json.JSONObject;
 
 import java.io.File;
-import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
 
 public class KilnLaunchPlugin implements Plugin<Project> {
 
@@ -28,72 +25,49 @@ public class KilnLaunchPlugin implements Plugin<Project> {
         }
 
         project.afterEvaluate(project1 -> {
-            File pluginCache = KilnPlugin.getMainInstance().getCache();
-            File versionFile = new File(pluginCache, "minecraft/" + extension.version);
-            File dependencies = new File(versionFile, "libraries");
-
-            try {
-                for (Project project2 : getAllProjects(project1.getRootProject())) {
-                    if (!project2.getPath().contains("launch") && project2.getBuildFile().exists()) {
-                        for (ArtifactRepository repository : project2.getRepositories()) {
-                            if (repository instanceof MavenArtifactRepository) {
-                                MavenArtifactRepository mavenRepository = (MavenArtifactRepository) repository;
-                                project1.getRepositories().maven(mavenArtifactRepository -> {
-                                    mavenArtifactRepository.setUrl(mavenRepository.getUrl());
-                                });
-                            }
+            List<SetupMinecraft> setupTasks = new ArrayList<>();
+
+            for (Project project2 : getAllProjects(project1.getRootProject())) {
+                if (!project2.getPath().contains("launch") && project2.getBuildFile().exists()) {
+                    for (ArtifactRepository repository : project2.getRepositories()) {
+                        if (repository instanceof MavenArtifactRepository) {
+                            MavenArtifactRepository mavenRepository = (MavenArtifactRepository) repository;
+                            project1.getRepositories().maven(mavenArtifactRepository -> {
+                                mavenArtifactRepository.setUrl(mavenRepository.getUrl());
+                            });
                         }
                     }
                 }
+            }
 
-                for (Project project2 : getAllProjects(project1.getRootProject())) {
-                    if (!project2.getPath().contains("launch") && project2.getBuildFile().exists()) {
-                        project.getDependencies().add("implementation", project.project(project2.getPath()));
-                    }
-                }
-
-                JSONObject versionManifest = Util.getVersionManifest(extension.version);
-
-                Map<String, String> libraries = new HashMap<>();
-
-                for (Object library : versionManifest.getJSONArray("libraries")) {
-                    JSONObject libraryJSON = (JSONObject) library;
-                    JSONObject downloads = libraryJSON.getJSONObject("downloads");
-                    if (downloads.has("artifact")) {
-                        String url = downloads.getJSONObject("artifact").getString("url");
-                        url = url.substring(url.lastIndexOf("/") + 1);
-
-                        String id = libraryJSON.getString("name");
-
-                        libraries.put(url, id);
-                    }
-                }
-
-                File minecraftFile = new File(pluginCache, "minecraft");
-                File localMaven = new File(minecraftFile, "localMaven");
+            for (Project project2 : getAllProjects(project1.getRootProject())) {
+                if (!project2.getPath().contains("launch") && project2.getBuildFile().exists()) {
+                    project.getDependencies().add("implementation", project.project(project2.getPath()));
 
-                IMappingsProvider mappingsProvider = null;
-                for (Pair<IMappingsProvider, Boolean> mappingsProviderPair : KilnPlugin.getMainInstance().getAllMappingsProviders()) {
-                    if (mappingsProviderPair.getLeft().getVersion().equals(extension.version)) {
-                        mappingsProvider = mappingsProviderPair.getLeft();
+                    Task setupTask = project2.getTasks().findByName("setupMinecraft");
+                    if (setupTask instanceof SetupMinecraft) {
+                        setupTasks.add((SetupMinecraft) setupTask);
                     }
                 }
+            }
 
-                File versionMappedJARFile = new File(localMaven, "net/minecraft/" + extension.environment + "-" + extension.version + "/" + mappingsProvider.getID() + "-" + mappingsProvider.getMappingsVersion() + "/" + extension.environment + "-" + extension.version + "-" + mappingsProvider.getID() + "-" + mappingsProvider.getMappingsVersion() + ".jar");
-                project.getDependencies().add("runtimeOnly", project.files(versionMappedJARFile.getAbsolutePath()));
-
-                for(File dependency : Objects.requireNonNull(dependencies.listFiles())) {
-                    if (!dependency.getName().endsWith(".jar")) continue;
-                    String library = libraries.get(dependency.getName());
-                    String[] id = library.split(":");
-                    File file = new File(localMaven, id[0].replace(".", "/") + "/" + id[1] + "-" + extension.version + "/" + id[2] + "/" + id[1] + "-" + extension.version + "-" + id[2] + ".jar");
+            // Minecraft is only set up by the setupMinecraft tasks, so its jars are looked up once they have run
+            project.getDependencies().add("runtimeOnly", project.files((Callable<List<File>>) () -> getMinecraftJars(setupTasks, extension)).builtBy(setupTasks));
+        });
+    }
 
-                    project.getDependencies().add("runtimeOnly", project.files(file.getAbsolutePath()));
-                }
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+    /**
+     * The mapped jar and libraries recorded by the setupMinecraft task of a project that depends on the launched version.
+     */
+    private List<File> getMinecraftJars(List<SetupMinecraft> setupTasks, KilnLaunchExtension extension) {
+        for (SetupMinecraft setupTask : setupTasks) {
+            List<File> installedFiles = setupTask.getInstalledFiles(extension.environment, extension.version);
+            if (installedFiles != null) {
+                return installedFiles;
             }
-        });
+        }
+
+        throw new RuntimeException("No project depends on Minecraft " + extension.environment + "-" + extension.version);
     }
 
     private List<Project> getAllProjects(Project project) {
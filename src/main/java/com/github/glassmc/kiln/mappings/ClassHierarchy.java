@@ -0,0 +1,147 @@
+package com.github.glassmc.kiln.mappings;
+
+import org.objectweb.asm.ClassReader;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Super class and interface index of a vanilla jar, shared by every mappings provider of a version.
+ * The index is persisted next to the jar so it only has to be built once.
+ */
+public class ClassHierarchy {
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final Map<String, LoadedIndex> loaded = new HashMap<>();
+
+    public static synchronized Map<String, List<String>> get(File minecraftFile, String version) throws IOException {
+        File jar = new File(minecraftFile, "client-" + version + ".jar");
+        File index = new File(minecraftFile, "client-" + version + "-hierarchy.bin");
+
+        LoadedIndex cached = loaded.get(jar.getAbsolutePath());
+        if (cached != null && cached.matches(jar)) {
+            return cached.parentClasses;
+        }
+
+        Map<String, List<String>> parentClasses = index.exists() ? read(index, jar) : null;
+        if (parentClasses == null) {
+            parentClasses = build(jar);
+            write(index, jar, parentClasses);
+        }
+
+        parentClasses = Collections.unmodifiableMap(parentClasses);
+        loaded.put(jar.getAbsolutePath(), new LoadedIndex(jar.length(), jar.lastModified(), parentClasses));
+        return parentClasses;
+    }
+
+    private static Map<String, List<String>> build(File jar) throws IOException {
+        Map<String, List<String>> parentClasses = new HashMap<>();
+
+        try (JarFile jarFile = new JarFile(jar)) {
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                if (entry.getName().endsWith(".class")) {
+                    // only the class header is needed, so the class is never visited
+                    ClassReader classReader = new ClassReader(jarFile.getInputStream(entry));
+
+                    List<String> parents = parentClasses.computeIfAbsent(classReader.getClassName(), k -> new ArrayList<>());
+                    String superName = classReader.getSuperName();
+                    if (superName != null && !superName.equals("java/lang/Object")) {
+                        parents.add(superName);
+                    }
+                    parents.addAll(Arrays.asList(classReader.getInterfaces()));
+                }
+            }
+        }
+
+        return parentClasses;
+    }
+
+    private static Map<String, List<String>> read(File index, File jar) {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(index.toPath())))) {
+            if (input.readInt() != FORMAT_VERSION || input.readLong() != jar.length() || input.readLong() != jar.lastModified()) {
+                return null;
+            }
+
+            String[] pool = new String[input.readInt()];
+            for (int i = 0; i < pool.length; i++) {
+                pool[i] = input.readUTF();
+            }
+
+            int classCount = input.readInt();
+            Map<String, List<String>> parentClasses = new HashMap<>(classCount * 2);
+            for (int i = 0; i < classCount; i++) {
+                String name = pool[input.readInt()];
+                List<String> parents = new ArrayList<>();
+                int parentCount = input.readUnsignedShort();
+                for (int j = 0; j < parentCount; j++) {
+                    parents.add(pool[input.readInt()]);
+                }
+                parentClasses.put(name, parents);
+            }
+
+            return parentClasses;
+        } catch (IOException | ArrayIndexOutOfBoundsException e) {
+            System.out.printf("Rebuilding class hierarchy index %s (%s)%n", index.getName(), e);
+            return null;
+        }
+    }
+
+    private static void write(File index, File jar, Map<String, List<String>> parentClasses) throws IOException {
+        Map<String, Integer> pool = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> entry : parentClasses.entrySet()) {
+            pool.putIfAbsent(entry.getKey(), pool.size());
+            for (String parent : entry.getValue()) {
+                pool.putIfAbsent(parent, pool.size());
+            }
+        }
+
+        File temp = new File(index.getAbsolutePath() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp.toPath())))) {
+            output.writeInt(FORMAT_VERSION);
+            output.writeLong(jar.length());
+            output.writeLong(jar.lastModified());
+
+            output.writeInt(pool.size());
+            for (String string : pool.keySet()) {
+                output.writeUTF(string);
+            }
+
+            output.writeInt(parentClasses.size());
+            for (Map.Entry<String, List<String>> entry : parentClasses.entrySet()) {
+                output.writeInt(pool.get(entry.getKey()));
+                output.writeShort(entry.getValue().size());
+                for (String parent : entry.getValue()) {
+                    output.writeInt(pool.get(parent));
+                }
+            }
+        }
+
+        Files.move(temp.toPath(), index.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static class LoadedIndex {
+
+        private final long length;
+        private final long lastModified;
+        private final Map<String, List<String>> parentClasses;
+
+        private LoadedIndex(long length, long lastModified, Map<String, List<String>> parentClasses) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.parentClasses = parentClasses;
+        }
+
+        private boolean matches(File jar) {
+            return jar.length() == this.length && jar.lastModified() == this.lastModified;
+        }
+
+    }
+
+}
@@ -0,0 +1,102 @@
+package com.github.glassmc.kiln.mappings;
+
+import com.github.glassmc.kiln.Pair;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Context whose keys are known up front, the methods of a class are only resolved the first time it is
+ * asked for and then cached. Iterating the entries resolves every class.
+ */
+public class LazyContext extends AbstractMap<String, Pair<Map<String, String>, List<String>>> {
+
+    private final Set<String> classNames;
+    private final Function<String, Pair<Map<String, String>, List<String>>> resolver;
+    private final Map<String, Pair<Map<String, String>, List<String>>> resolved = new ConcurrentHashMap<>();
+
+    /**
+     * @param resolver called once for each of {@code classNames} that is looked up, it must not return null
+     */
+    public LazyContext(Set<String> classNames, Function<String, Pair<Map<String, String>, List<String>>> resolver) {
+        this.classNames = Collections.unmodifiableSet(classNames);
+        this.resolver = resolver;
+    }
+
+    /**
+     * Combines the contexts of several providers, a class in a later context hides the same class in an earlier one.
+     */
+    public static LazyContext of(List<Map<String, Pair<Map<String, String>, List<String>>>> contexts) {
+        Set<String> classNames = new HashSet<>();
+        for (Map<String, Pair<Map<String, String>, List<String>>> context : contexts) {
+            classNames.addAll(context.keySet());
+        }
+
+        return new LazyContext(classNames, className -> {
+            for (int i = contexts.size() - 1; i >= 0; i--) {
+                Pair<Map<String, String>, List<String>> classContext = contexts.get(i).get(className);
+                if (classContext != null) {
+                    return classContext;
+                }
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public Pair<Map<String, String>, List<String>> get(Object key) {
+        if (!this.classNames.contains(key)) {
+            return null;
+        }
+
+        return this.resolved.computeIfAbsent((String) key, this.resolver);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return this.classNames.contains(key);
+    }
+
+    @Override
+    public int size() {
+        return this.classNames.size();
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return this.classNames;
+    }
+
+    @Override
+    public Set<Entry<String, Pair<Map<String, String>, List<String>>>> entrySet() {
+        return new AbstractSet<Entry<String, Pair<Map<String, String>, List<String>>>>() {
+
+            @Override
+            public Iterator<Entry<String, Pair<Map<String, String>, List<String>>>> iterator() {
+                Iterator<String> classNames = LazyContext.this.classNames.iterator();
+                return new Iterator<Entry<String, Pair<Map<String, String>, List<String>>>>() {
+
+                    @Override
+                    public boolean hasNext() {
+                        return classNames.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String, Pair<Map<String, String>, List<String>>> next() {
+                        String className = classNames.next();
+                        return new SimpleImmutableEntry<>(className, LazyContext.this.get(className));
+                    }
+
+                };
+            }
+
+            @Override
+            public int size() {
+                return LazyContext.this.classNames.size();
+            }
+
+        };
+    }
+
+}
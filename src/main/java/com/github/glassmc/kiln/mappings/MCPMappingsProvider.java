@@ -2,31 +2,25 @@ package com.github.glassmc.kiln.mappings;
 
 import java.io.File;
 import java.io.IOException;
-import java.net.MalformedURLException;
 import java.net.URL;
-import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.jar.JarEntry;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.jar.JarFile;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 import com.github.glassmc.kiln.Pair;
-import com.github.glassmc.kiln.Util;
-import net.fabricmc.mapping.util.EntryTriple;
 import org.apache.commons.io.FileUtils;
-import org.json.JSONArray;
-import org.json.JSONObject;
 import com.github.glassmc.kiln.internalremapper.Remapper;
 
 import com.github.glassmc.kiln.remapper.CSRGRemapper;
+import com.github.glassmc.kiln.remapper.CompiledMappings;
 import com.github.glassmc.kiln.remapper.CSVRemapper;
 import com.github.glassmc.kiln.remapper.HashRemapper;
+import com.github.glassmc.kiln.remapper.MemberTable;
 import com.github.glassmc.kiln.remapper.ReversibleRemapper;
 import com.github.glassmc.kiln.remapper.UniqueRemapper;
-import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.Type;
-import org.objectweb.asm.tree.ClassNode;
 
 public class MCPMappingsProvider implements IMappingsProvider {
 
@@ -45,41 +39,18 @@ public class MCPMappingsProvider implements IMappingsProvider {
         this.version = version;
         this.mappingsVersion = mappingsVersion;
 
-        File mappingsJson = new File(minecraftFile.getParentFile().getParentFile(), "mappings.json");
-        JSONObject jsonObject = null;
-        try {
-            jsonObject = new JSONObject(FileUtils.readFileToString(mappingsJson, StandardCharsets.UTF_8));
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        JSONArray mappings = jsonObject.getJSONArray("mcp");
-
+        // minecraftFile is <kiln cache>/minecraft/<version>
         File temp = new File(minecraftFile, "temp");
-
-        boolean found = false;
-        URL seargeURL = null;
-        URL mcpURL = null;
-        for (Object possibleURL : mappings) {
-            JSONObject jsonObject1 = (JSONObject) possibleURL;
-
-            try {
-                seargeURL = new URL(jsonObject1.getString("srg").replace("%version%", version).replace("%mappingsVersion%", mappingsVersion));
-                mcpURL = new URL(jsonObject1.getString("mcp").replace("%version%", version).replace("%mappingsVersion%", mappingsVersion));
-
-                if (Util.isValid(seargeURL) && Util.isValid(mcpURL)) {
-                    found = true;
-                    break;
-                }
-            } catch (MalformedURLException e) {
-                e.printStackTrace();
-            }
-        }
-
-        if (!found) {
+        URL[] urls = MappingsUrlResolver.resolve(minecraftFile.getParentFile().getParentFile(), new File(temp, "mcp-" + mappingsVersion + ".urls"), "mcp", version, mappingsVersion,
+                candidate -> new File(temp, getFileBase(candidate[0]) + "-joined.csrg").exists() && new File(temp, getFileBase(candidate[1]) + "-fields.csv").exists(),
+                "srg", "mcp");
+        if (urls == null) {
             throw new NoSuchMappingsException(version + "-" + mappingsVersion);
         }
 
+        URL seargeURL = urls[0];
+        URL mcpURL = urls[1];
+
         //Pair<String, String> mappingURLs = new Pair<>(mappings.getString("srg"), mappings.getString("mcp"));
 
         /*try {
@@ -91,8 +62,8 @@ public class MCPMappingsProvider implements IMappingsProvider {
         }*/
 
         try {
-            String seargeFileBase = seargeURL.getFile().substring(seargeURL.getFile().lastIndexOf("/")).substring(1).replace(".zip", "");
-            String namedFileBase = mcpURL.getFile().substring(mcpURL.getFile().lastIndexOf("/")).substring(1).replace(".zip", "");
+            String seargeFileBase = getFileBase(seargeURL);
+            String namedFileBase = getFileBase(mcpURL);
 
             File seargeMappings = new File(temp, seargeFileBase + "-joined.csrg");
             File seargeMappingsParams = new File(temp, seargeFileBase + "-joined.exc");
@@ -120,40 +91,56 @@ public class MCPMappingsProvider implements IMappingsProvider {
                 namedJARFile.close();
             }
 
-            searge = CSRGRemapper.create(seargeMappings, seargeMappingsParams);
-            reversedSearge = searge.reversed();
-            named = CSVRemapper.create(null, fieldMappings, methodMappings, paramMappings, "searge", "param", "name");
-            reversedNamed = named.toNonUnique(searge).reversed();
-
-            this.parentClasses = new HashMap<>();
-            JarFile jarFile = new JarFile(new File(minecraftFile, "client-" + version + ".jar"));
-            Enumeration<JarEntry> entries = jarFile.entries();
-            while(entries.hasMoreElements()) {
-                JarEntry entry = entries.nextElement();
-                if(entry.getName().endsWith(".class")) {
-                    ClassNode classNode = new ClassNode();
-                    ClassReader classReader = new ClassReader(jarFile.getInputStream(entry));
-                    classReader.accept(classNode, 0);
-
-                    List<String> parents = parentClasses.computeIfAbsent(classNode.name, k -> new ArrayList<>());
-                    if (!classNode.superName.equals("java/lang/Object")) {
-                        parents.add(classNode.superName);
-                    }
-                    parents.addAll(classNode.interfaces);
-                }
+            File compiledMappingsFile = new File(temp, namedFileBase + "-" + seargeFileBase + ".bin");
+            long checksum = CompiledMappings.checksum(seargeMappings, seargeMappingsParams, fieldMappings, methodMappings, paramMappings);
+            ReversibleRemapper[] compiledMappings = CompiledMappings.read(compiledMappingsFile, checksum);
+
+            if (compiledMappings != null) {
+                searge = (HashRemapper) compiledMappings[0];
+                reversedSearge = compiledMappings[1];
+                named = (UniqueRemapper) compiledMappings[2];
+                reversedNamed = compiledMappings[3];
+            } else {
+                searge = CSRGRemapper.create(seargeMappings, seargeMappingsParams);
+                reversedSearge = searge.reversed();
+                named = CSVRemapper.create(null, fieldMappings, methodMappings, paramMappings, "searge", "param", "name");
+                reversedNamed = named.toNonUnique(searge).reversed();
+                CompiledMappings.write(compiledMappingsFile, checksum, searge, reversedSearge, named, reversedNamed);
             }
+
+            this.parentClasses = ClassHierarchy.get(minecraftFile, version);
         } catch(IOException e) {
             e.printStackTrace();
         }
     }
 
+    private static String getFileBase(URL url) {
+        return url.getFile().substring(url.getFile().lastIndexOf("/")).substring(1).replace(".zip", "");
+    }
+
     @Override
     public Remapper getRemapper(Direction direction) {
         ReversibleRemapper initial = direction == Direction.TO_NAMED ? searge : reversedNamed;
         ReversibleRemapper result = direction == Direction.TO_NAMED ? named : reversedSearge;
+        // maps obfuscated names back to the input names, reversing is expensive so it is only done once
+        Remapper reverse = direction == Direction.TO_NAMED ? null : new Remapper() {
+
+            private final ReversibleRemapper initialReversed = initial.reversed();
+            private final ReversibleRemapper resultReversed = result.reversed();
+
+            @Override
+            public String map(String name) {
+                return this.initialReversed.map(this.resultReversed.map(name));
+            }
+
+        };
 
         return new Remapper() {
 
+            private final Map<String, List<String>> classes = new ConcurrentHashMap<>();
+            private final MemberCache methods = new MemberCache();
+            private final MemberCache fields = new MemberCache();
+
             @Override
             public String map(String name) {
                 return result.map(initial.map(name));
@@ -161,24 +148,42 @@ public class MCPMappingsProvider implements IMappingsProvider {
 
             @Override
             public String mapMethodName(String owner, String name, String descriptor) {
-                for(String className : getClasses(getObfName(owner, direction, this), direction, initial, result)) {
+                String cached = this.methods.get(owner, name, descriptor);
+                if (cached != null) {
+                    return cached;
+                }
+
+                String resolved = name;
+                for(String className : getClasses(getObfName(owner, direction, this), reverse, this.classes)) {
                     String newName = result.mapMethodName(initial.map(className), initial.mapMethodName(className, name, descriptor), initial.mapDesc(descriptor));
                     if(!newName.equals(name)) {
-                        return newName;
+                        resolved = newName;
+                        break;
                     }
                 }
-                return name;
+
+                this.methods.put(owner, name, descriptor, resolved);
+                return resolved;
             }
 
             @Override
             public String mapFieldName(String owner, String name, String descriptor) {
-                for(String className : getClasses(getObfName(owner, direction, this), direction, initial, result)) {
+                String cached = this.fields.get(owner, name, descriptor);
+                if (cached != null) {
+                    return cached;
+                }
+
+                String resolved = name;
+                for(String className : getClasses(getObfName(owner, direction, this), reverse, this.classes)) {
                     String newName = result.mapFieldName(initial.map(className), initial.mapFieldName(className, name, descriptor), initial.mapDesc(descriptor));
                     if(!newName.equals(name)) {
-                        return newName;
+                        resolved = newName;
+                        break;
                     }
                 }
-                return name;
+
+                this.fields.put(owner, name, descriptor, resolved);
+                return resolved;
             }
 
             @Override
@@ -186,7 +191,7 @@ public class MCPMappingsProvider implements IMappingsProvider {
                 return this.mapFieldName(owner, name, descriptor);
             }
 
-            private final List<String> staticMethods = new ArrayList<>();
+            private final Set<String> staticMethods = Collections.newSetFromMap(new ConcurrentHashMap<>());
 
             @Override
             public String mapVariableName(String clazz, String method, String methodDesc, String name, int index) {
@@ -213,41 +218,46 @@ public class MCPMappingsProvider implements IMappingsProvider {
         if (side == Side.NAMED) {
             Remapper remapper = this.getRemapper(Direction.TO_NAMED);
 
-            Map<String, Pair<Map<String, String>, List<String>>> context = new HashMap<>();
-
-            for (Map.Entry<String, String> className : searge.getClassNames().entrySet()) {
-                String className1 = className.getValue();
-
-                context.put(className1, new Pair<>(new HashMap<>(), new ArrayList<>()));
-            }
-
-            for (Map.Entry<EntryTriple, String> methodName : searge.getMethodNames().entrySet()) {
-                String className = remapper.map(methodName.getKey().getOwner());
-                String methodName1 = named.mapMethodName(className, methodName.getValue(), null);
-                String methodDesc = remapper.mapMethodDesc(methodName.getKey().getDescriptor());
-                context.get(className).getLeft().put(methodName1, methodDesc);
-            }
-
-            return context;
+            return new LazyContext(new HashSet<>(searge.getClassNames().values()), className -> {
+                String obfName = reversedSearge.map(className);
+                Pair<Map<String, String>, List<String>> pair = new Pair<>(new HashMap<>(), new ArrayList<>());
+                MemberTable<String> methods = searge.getMethods(obfName);
+                if (methods != null) {
+                    for (int i = 0; i < methods.capacity(); i++) {
+                        if (methods.getName(i) != null) {
+                            String methodName = named.mapMethodName(className, methods.getValue(i), null);
+                            String methodDesc = remapper.mapMethodDesc(methods.getDescriptor(i));
+                            pair.getLeft().put(methodName, methodDesc);
+                        }
+                    }
+                }
+                return pair;
+            });
         }
         return null;
     }
 
-    private List<String> getClasses(String obfName, Direction direction, ReversibleRemapper initial, ReversibleRemapper result) {
+    private List<String> getClasses(String obfName, Remapper reverse, Map<String, List<String>> cache) {
+        List<String> cached = cache.get(obfName);
+        if (cached != null) {
+            return cached;
+        }
+
         List<String> parents = new ArrayList<>();
 
-        if (direction == Direction.TO_NAMED) {
+        if (reverse == null) {
             parents.add(obfName);
         } else {
-            parents.add(initial.reversed().map(result.reversed().map(obfName)));
+            parents.add(reverse.map(obfName));
         }
 
         if(parentClasses.get(obfName) != null) {
             for(String string : parentClasses.get(obfName)) {
-                parents.addAll(this.getClasses(string, direction, initial, result));
+                parents.addAll(this.getClasses(string, reverse, cache));
             }
         }
 
+        cache.put(obfName, parents);
         return parents;
     }
 
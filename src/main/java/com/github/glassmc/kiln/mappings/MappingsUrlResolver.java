@@ -0,0 +1,137 @@
+package com.github.glassmc.kiln.mappings;
+
+import com.github.glassmc.kiln.Util;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.*;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+
+/**
+ * Picks the first candidate in the mappings index whose URLs all exist and remembers it, so a version
+ * and mappings version only has to be probed once. Candidates whose mappings have already been extracted
+ * are taken without probing.
+ */
+public class MappingsUrlResolver {
+
+    /**
+     * The URLs of {@code keys} in the first valid candidate of {@code index} in the mappings index, or null if none of them is valid.
+     * A candidate for which {@code extracted} holds is valid without probing its URLs.
+     */
+    public static URL[] resolve(File pluginCache, File resolvedFile, String index, String version, String mappingsVersion, Predicate<URL[]> extracted, String... keys) {
+        URL[] resolved = read(resolvedFile, keys);
+        if (resolved != null) {
+            return resolved;
+        }
+
+        JSONArray candidates;
+        try {
+            candidates = Util.getMappingsIndex(pluginCache).getJSONArray(index);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+
+        List<URL[]> candidateURLs = new ArrayList<>();
+        for (Object possibleURL : candidates) {
+            JSONObject candidate = (JSONObject) possibleURL;
+
+            try {
+                URL[] urls = new URL[keys.length];
+                for (int i = 0; i < keys.length; i++) {
+                    urls[i] = new URL(candidate.getString(keys[i]).replace("%version%", version).replace("%mappingsVersion%", mappingsVersion));
+                }
+                candidateURLs.add(urls);
+            } catch (MalformedURLException e) {
+                e.printStackTrace();
+            }
+        }
+
+        for (URL[] urls : candidateURLs) {
+            if (extracted.test(urls)) {
+                write(resolvedFile, keys, urls);
+                return urls;
+            }
+        }
+
+        // every URL is probed at once, the candidates are still checked in the order of the index
+        ExecutorService executor = Executors.newFixedThreadPool(Util.getDownloadThreadCount());
+        try {
+            List<List<Future<Boolean>>> probes = new ArrayList<>();
+            for (URL[] urls : candidateURLs) {
+                List<Future<Boolean>> candidateProbes = new ArrayList<>();
+                for (URL url : urls) {
+                    candidateProbes.add(executor.submit(() -> Util.isValid(url)));
+                }
+                probes.add(candidateProbes);
+            }
+
+            for (int i = 0; i < probes.size(); i++) {
+                boolean valid = true;
+                for (Future<Boolean> probe : probes.get(i)) {
+                    valid &= probe.get();
+                }
+
+                if (valid) {
+                    write(resolvedFile, keys, candidateURLs.get(i));
+                    return candidateURLs.get(i);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return null;
+    }
+
+    private static URL[] read(File resolvedFile, String[] keys) {
+        if (!resolvedFile.exists()) {
+            return null;
+        }
+
+        Properties properties = new Properties();
+        try (InputStream inputStream = Files.newInputStream(resolvedFile.toPath())) {
+            properties.load(inputStream);
+
+            URL[] urls = new URL[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                String url = properties.getProperty(keys[i]);
+                if (url == null) {
+                    return null;
+                }
+                urls[i] = new URL(url);
+            }
+            return urls;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static void write(File resolvedFile, String[] keys, URL[] urls) {
+        Properties properties = new Properties();
+        for (int i = 0; i < keys.length; i++) {
+            properties.setProperty(keys[i], urls[i].toString());
+        }
+
+        resolvedFile.getParentFile().mkdirs();
+        try (OutputStream outputStream = Files.newOutputStream(resolvedFile.toPath())) {
+            properties.store(outputStream, null);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+}
@@ -0,0 +1,37 @@
+package com.github.glassmc.kiln.mappings;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread safe cache of resolved member names, keyed by owner, name and descriptor without building a key object.
+ */
+class MemberCache {
+
+    private final Map<String, Map<String, Map<String, String>>> members = new ConcurrentHashMap<>();
+
+    String get(String owner, String name, String descriptor) {
+        if (owner == null || name == null || descriptor == null) {
+            return null;
+        }
+
+        Map<String, Map<String, String>> names = this.members.get(owner);
+        if (names == null) {
+            return null;
+        }
+
+        Map<String, String> descriptors = names.get(name);
+        return descriptors == null ? null : descriptors.get(descriptor);
+    }
+
+    void put(String owner, String name, String descriptor, String resolved) {
+        if (owner == null || name == null || descriptor == null) {
+            return;
+        }
+
+        this.members.computeIfAbsent(owner, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(name, k -> new ConcurrentHashMap<>())
+                .put(descriptor, resolved);
+    }
+
+}
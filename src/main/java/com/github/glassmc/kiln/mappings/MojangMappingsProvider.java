@@ -4,20 +4,18 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.util.*;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.github.glassmc.kiln.Pair;
+import com.github.glassmc.kiln.remapper.CompiledMappings;
 import com.github.glassmc.kiln.remapper.HashRemapper;
-import net.fabricmc.mapping.util.EntryTriple;
-import org.apache.commons.io.FileUtils;
+import com.github.glassmc.kiln.remapper.MemberTable;
+import com.github.glassmc.kiln.remapper.ReversibleRemapper;
 import org.json.JSONObject;
 import com.github.glassmc.kiln.internalremapper.Remapper;
 
 import com.github.glassmc.kiln.Util;
 import com.github.glassmc.kiln.remapper.ProGuardRemapper;
-import org.objectweb.asm.ClassReader;
-import org.objectweb.asm.tree.ClassNode;
 
 //TODO: Some kind of mojang-parchment mappings to get parameter remapping
 public class MojangMappingsProvider implements IMappingsProvider {
@@ -35,7 +33,8 @@ public class MojangMappingsProvider implements IMappingsProvider {
 
             File temp = new File(minecraftFile, "temp");
 
-            JSONObject versionManifest = Util.getVersionManifest(version);
+            // minecraftFile is <kiln cache>/minecraft/<version>
+            JSONObject versionManifest = Util.getVersionManifest(minecraftFile.getParentFile().getParentFile(), version);
 
             JSONObject downloads = versionManifest.getJSONObject("downloads");
 
@@ -44,31 +43,30 @@ public class MojangMappingsProvider implements IMappingsProvider {
                 throw new NoSuchMappingsException(version);
             }
 
-            URL mappingsURL = new URL(downloads.getJSONObject("client_mappings").getString("url"));
+            JSONObject clientMappings = downloads.getJSONObject("client_mappings");
+            URL mappingsURL = new URL(clientMappings.getString("url"));
+            String mappingsSha1 = clientMappings.optString("sha1", null);
 
+            // a file from an interrupted download fails the checksum and is downloaded again
             File mappingsFile = new File(temp, "mojang-mappings-" + version + ".txt");
-            FileUtils.copyURLToFile(mappingsURL, mappingsFile);
-
-            obfuscator = ProGuardRemapper.create(mappingsFile);
-            deobfuscator = obfuscator.reversed();
-
-            this.parentClasses = new HashMap<>();
-            JarFile jarFile = new JarFile(new File(minecraftFile, "client-" + version + ".jar"));
-            Enumeration<JarEntry> entries = jarFile.entries();
-            while(entries.hasMoreElements()) {
-                JarEntry entry = entries.nextElement();
-                if(entry.getName().endsWith(".class")) {
-                    ClassNode classNode = new ClassNode();
-                    ClassReader classReader = new ClassReader(jarFile.getInputStream(entry));
-                    classReader.accept(classNode, 0);
-
-                    List<String> parents = parentClasses.computeIfAbsent(classNode.name, k -> new ArrayList<>());
-                    if (!classNode.superName.equals("java/lang/Object")) {
-                        parents.add(classNode.superName);
-                    }
-                    parents.addAll(classNode.interfaces);
-                }
+            if (mappingsSha1 != null || !mappingsFile.exists()) {
+                Util.download(mappingsURL, mappingsFile, mappingsSha1);
+            }
+
+            File compiledMappingsFile = new File(temp, "mojang-mappings-" + version + ".bin");
+            long checksum = CompiledMappings.checksum(mappingsFile);
+            ReversibleRemapper[] compiledMappings = CompiledMappings.read(compiledMappingsFile, checksum);
+
+            if (compiledMappings != null) {
+                obfuscator = (HashRemapper) compiledMappings[0];
+                deobfuscator = (HashRemapper) compiledMappings[1];
+            } else {
+                obfuscator = ProGuardRemapper.create(mappingsFile);
+                deobfuscator = obfuscator.reversed();
+                CompiledMappings.write(compiledMappingsFile, checksum, obfuscator, deobfuscator);
             }
+
+            this.parentClasses = ClassHierarchy.get(minecraftFile, version);
         } catch(IOException error) {
             error.printStackTrace();
         }
@@ -88,6 +86,10 @@ public class MojangMappingsProvider implements IMappingsProvider {
 
         return new Remapper() {
 
+            private final Map<String, List<String>> classes = new ConcurrentHashMap<>();
+            private final MemberCache methods = new MemberCache();
+            private final MemberCache fields = new MemberCache();
+
             @Override
             public String map(String name) {
                 return remapper.map(name);
@@ -95,24 +97,42 @@ public class MojangMappingsProvider implements IMappingsProvider {
 
             @Override
             public String mapMethodName(String owner, String name, String descriptor) {
-                for(String className : getClasses(getObfName(owner, direction, remapper), direction, reverseRemapper)) {
+                String cached = this.methods.get(owner, name, descriptor);
+                if (cached != null) {
+                    return cached;
+                }
+
+                String resolved = name;
+                for(String className : getClasses(getObfName(owner, direction, remapper), direction, reverseRemapper, this.classes)) {
                     String newName = remapper.mapMethodName(className, name, descriptor);
                     if(!newName.equals(name)) {
-                        return newName;
+                        resolved = newName;
+                        break;
                     }
                 }
-                return name;
+
+                this.methods.put(owner, name, descriptor, resolved);
+                return resolved;
             }
 
             @Override
             public String mapFieldName(String owner, String name, String descriptor) {
-                for(String className : getClasses(getObfName(owner, direction, remapper), direction, reverseRemapper)) {
+                String cached = this.fields.get(owner, name, descriptor);
+                if (cached != null) {
+                    return cached;
+                }
+
+                String resolved = name;
+                for(String className : getClasses(getObfName(owner, direction, remapper), direction, reverseRemapper, this.classes)) {
                     String newName = remapper.mapFieldName(className, name, descriptor);
                     if(!newName.equals(name)) {
-                        return newName;
+                        resolved = newName;
+                        break;
                     }
                 }
-                return name;
+
+                this.fields.put(owner, name, descriptor, resolved);
+                return resolved;
             }
 
             @Override
@@ -133,27 +153,30 @@ public class MojangMappingsProvider implements IMappingsProvider {
         if (side == Side.NAMED) {
             Remapper remapper = this.getRemapper(Direction.TO_NAMED);
 
-            Map<String, Pair<Map<String, String>, List<String>>> context = new HashMap<>();
-
-            for (Map.Entry<String, String> className : deobfuscator.getClassNames().entrySet()) {
-                String className1 = className.getValue();
-
-                context.put(className1, new Pair<>(new HashMap<>(), new ArrayList<>()));
-            }
-
-            for (Map.Entry<EntryTriple, String> methodName : deobfuscator.getMethodNames().entrySet()) {
-                String className = remapper.map(methodName.getKey().getOwner());
-                String methodDesc = remapper.mapMethodDesc(methodName.getKey().getDescriptor());
-                String methodName1 = deobfuscator.mapMethodName(className, methodName.getValue(), methodDesc);
-                context.get(className).getLeft().put(methodName1, methodDesc);
-            }
-
-            return context;
+            return new LazyContext(obfuscator.getClassNames().keySet(), className -> {
+                Pair<Map<String, String>, List<String>> pair = new Pair<>(new HashMap<>(), new ArrayList<>());
+                MemberTable<String> methods = deobfuscator.getMethods(obfuscator.map(className));
+                if (methods != null) {
+                    for (int i = 0; i < methods.capacity(); i++) {
+                        if (methods.getName(i) != null) {
+                            String methodDesc = remapper.mapMethodDesc(methods.getDescriptor(i));
+                            String methodName = deobfuscator.mapMethodName(className, methods.getValue(i), methodDesc);
+                            pair.getLeft().put(methodName, methodDesc);
+                        }
+                    }
+                }
+                return pair;
+            });
         }
         return null;
     }
 
-    private List<String> getClasses(String obfName, Direction direction, Remapper reverseRemapper) {
+    private List<String> getClasses(String obfName, Direction direction, Remapper reverseRemapper, Map<String, List<String>> cache) {
+        List<String> cached = cache.get(obfName);
+        if (cached != null) {
+            return cached;
+        }
+
         List<String> parents = new ArrayList<>();
 
         if (direction == Direction.TO_NAMED) {
@@ -164,10 +187,11 @@ public class MojangMappingsProvider implements IMappingsProvider {
 
         if(parentClasses.get(obfName) != null) {
             for(String string : parentClasses.get(obfName)) {
-                parents.addAll(this.getClasses(string, direction, reverseRemapper));
+                parents.addAll(this.getClasses(string, direction, reverseRemapper, cache));
             }
         }
 
+        cache.put(obfName, parents);
         return parents;
     }
 
@@ -1,30 +1,30 @@
 package com.github.glassmc.kiln.mappings;
 
 import com.github.glassmc.kiln.Pair;
-import com.github.glassmc.kiln.Util;
-import net.fabricmc.mapping.tree.*;
+import net.fabricmc.mapping.tree.TinyMappingFactory;
+import net.fabricmc.mapping.tree.TinyTree;
 import org.apache.commons.io.FileUtils;
-import org.json.JSONArray;
-import org.json.JSONObject;
-import org.objectweb.asm.ClassReader;
 import com.github.glassmc.kiln.internalremapper.Remapper;
-import org.objectweb.asm.tree.ClassNode;
 
+import com.github.glassmc.kiln.remapper.CompiledMappings;
+import com.github.glassmc.kiln.remapper.HashRemapper;
+import com.github.glassmc.kiln.remapper.MemberTable;
+import com.github.glassmc.kiln.remapper.ReversibleRemapper;
 import com.github.glassmc.kiln.remapper.TinyRemapper;
 
 import java.io.*;
-import java.net.MalformedURLException;
 import java.net.URL;
-import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.jar.JarEntry;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.jar.JarFile;
 import java.util.zip.ZipEntry;
 
 public class YarnMappingsProvider implements IMappingsProvider {
 
-    private TinyTree namedTree;
-    private TinyTree intermediaryTree;
+    private HashRemapper officialToIntermediary;
+    private HashRemapper intermediaryToOfficial;
+    private HashRemapper namedToIntermediary;
+    private HashRemapper intermediaryToNamed;
     private Map<String, List<String>> parentClasses;
     private String version;
     private String mappingsVersion;
@@ -34,43 +34,21 @@ public class YarnMappingsProvider implements IMappingsProvider {
         this.version = version;
         this.mappingsVersion = mappingsVersion;
 
-        File mappingsJson = new File(minecraftFile.getParentFile().getParentFile(), "mappings.json");
-        JSONObject jsonObject = null;
-        try {
-            jsonObject = new JSONObject(FileUtils.readFileToString(mappingsJson, StandardCharsets.UTF_8));
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        JSONArray mappings = jsonObject.getJSONArray("yarn");
-
-        boolean found = false;
-        URL intermediaryURL = null;
-        URL namedURL = null;
+        // minecraftFile is <kiln cache>/minecraft/<version>
         File temp = new File(minecraftFile, "temp");
-        for (Object possibleURL : mappings) {
-            JSONObject jsonObject1 = (JSONObject) possibleURL;
-
-            try {
-                intermediaryURL = new URL(jsonObject1.getString("intermediary").replace("%version%", version).replace("%mappingsVersion%", mappingsVersion));
-                namedURL = new URL(jsonObject1.getString("named").replace("%version%", version).replace("%mappingsVersion%", mappingsVersion));
-
-                if (Util.isValid(intermediaryURL) && Util.isValid(namedURL)) {
-                    found = true;
-                    break;
-                }
-            } catch (MalformedURLException e) {
-                e.printStackTrace();
-            }
-        }
-
-        if (!found) {
+        URL[] urls = MappingsUrlResolver.resolve(minecraftFile.getParentFile().getParentFile(), new File(temp, "yarn-" + mappingsVersion + ".urls"), "yarn", version, mappingsVersion,
+                candidate -> new File(temp, getFileBase(candidate[0], mappingsVersion) + ".tiny").exists() && new File(temp, getFileBase(candidate[1], mappingsVersion) + ".tiny").exists(),
+                "intermediary", "named");
+        if (urls == null) {
             throw new NoSuchMappingsException(version + "-" + mappingsVersion);
         }
 
+        URL intermediaryURL = urls[0];
+        URL namedURL = urls[1];
+
         try {
-            String intermediaryFileBase = intermediaryURL.getFile().substring(intermediaryURL.getFile().lastIndexOf("/")).substring(1).replace(".jar", "") + "-" + mappingsVersion;
-            String namedFileBase = namedURL.getFile().substring(namedURL.getFile().lastIndexOf("/")).substring(1).replace(".jar", "") + "-" + mappingsVersion;
+            String intermediaryFileBase = getFileBase(intermediaryURL, mappingsVersion);
+            String namedFileBase = getFileBase(namedURL, mappingsVersion);
 
             File intermediaryMappings = new File(temp, intermediaryFileBase + ".tiny");
             File namedMappings = new File(temp, namedFileBase + ".tiny");
@@ -90,42 +68,47 @@ public class YarnMappingsProvider implements IMappingsProvider {
                 namedJARFile.close();
             }
 
-            this.intermediaryTree = TinyMappingFactory.load(new BufferedReader(new FileReader(intermediaryMappings)));
-            this.namedTree = TinyMappingFactory.load(new BufferedReader(new FileReader(namedMappings)));
-
-            this.parentClasses = new HashMap<>();
-            JarFile jarFile = new JarFile(new File(minecraftFile, "client-" + version + ".jar"));
-            Enumeration<JarEntry> entries = jarFile.entries();
-            while(entries.hasMoreElements()) {
-                JarEntry entry = entries.nextElement();
-                if(entry.getName().endsWith(".class")) {
-                    ClassNode classNode = new ClassNode();
-                    ClassReader classReader = new ClassReader(jarFile.getInputStream(entry));
-                    classReader.accept(classNode, 0);
-
-                    List<String> parents = parentClasses.computeIfAbsent(classNode.name, k -> new ArrayList<>());
-                    if (!classNode.superName.equals("java/lang/Object")) {
-                        parents.add(classNode.superName);
-                    }
-                    parents.addAll(classNode.interfaces);
-                }
+            File compiledMappingsFile = new File(temp, namedFileBase + ".bin");
+            long checksum = CompiledMappings.checksum(intermediaryMappings, namedMappings);
+            ReversibleRemapper[] compiledMappings = CompiledMappings.read(compiledMappingsFile, checksum);
+
+            if (compiledMappings != null) {
+                this.officialToIntermediary = (HashRemapper) compiledMappings[0];
+                this.intermediaryToOfficial = (HashRemapper) compiledMappings[1];
+                this.namedToIntermediary = (HashRemapper) compiledMappings[2];
+                this.intermediaryToNamed = (HashRemapper) compiledMappings[3];
+            } else {
+                TinyTree intermediaryTree = TinyMappingFactory.load(new BufferedReader(new FileReader(intermediaryMappings)));
+                TinyTree namedTree = TinyMappingFactory.load(new BufferedReader(new FileReader(namedMappings)));
+
+                this.officialToIntermediary = TinyRemapper.create(intermediaryTree, "official", "intermediary");
+                this.intermediaryToOfficial = TinyRemapper.create(intermediaryTree, "intermediary", "official");
+                this.namedToIntermediary = TinyRemapper.create(namedTree, "named", "intermediary");
+                this.intermediaryToNamed = TinyRemapper.create(namedTree, "intermediary", "named");
+                CompiledMappings.write(compiledMappingsFile, checksum, this.officialToIntermediary, this.intermediaryToOfficial, this.namedToIntermediary, this.intermediaryToNamed);
             }
+
+            this.parentClasses = ClassHierarchy.get(minecraftFile, version);
         } catch(IOException e) {
             e.printStackTrace();
         }
     }
 
+    private static String getFileBase(URL url, String mappingsVersion) {
+        return url.getFile().substring(url.getFile().lastIndexOf("/")).substring(1).replace(".jar", "") + "-" + mappingsVersion;
+    }
+
     @Override
     public Remapper getRemapper(Direction direction) {
-        String input = direction == Direction.TO_NAMED ? "official" : "named";
-        String middle = "intermediary";
-        String output = direction == Direction.TO_NAMED ? "named" : "official";
-
-        Remapper initial = TinyRemapper.create(direction == Direction.TO_NAMED ? this.intermediaryTree : this.namedTree, input, middle);
-        Remapper result = TinyRemapper.create(direction == Direction.TO_NAMED ? this.namedTree : this.intermediaryTree, middle, output);
+        Remapper initial = direction == Direction.TO_NAMED ? this.officialToIntermediary : this.namedToIntermediary;
+        Remapper result = direction == Direction.TO_NAMED ? this.intermediaryToNamed : this.intermediaryToOfficial;
 
         return new Remapper() {
 
+            private final Map<String, List<Pair<String, String>>> classes = new ConcurrentHashMap<>();
+            private final MemberCache methods = new MemberCache();
+            private final MemberCache fields = new MemberCache();
+
             @Override
             public String map(String name) {
                 return result.map(initial.map(name));
@@ -133,30 +116,49 @@ public class YarnMappingsProvider implements IMappingsProvider {
 
             @Override
             public String mapMethodName(String owner, String name, String descriptor) {
-                for(ClassDef classDef : getClasses(getObfName(owner, direction, initial, result), direction)) {
-                    String middleName = classDef.getName(middle);
-                    String initialName = classDef.getName(input);
+                String cached = this.methods.get(owner, name, descriptor);
+                if (cached != null) {
+                    return cached;
+                }
+
+                String resolved = name;
+                for(Pair<String, String> classNames : getClasses(getObfName(owner, direction, initial, result), direction, this.classes)) {
+                    String middleName = classNames.getLeft();
+                    String initialName = classNames.getRight();
 
                     String newName = result.mapMethodName(middleName, initial.mapMethodName(initialName, name, descriptor), initial.mapDesc(descriptor));
                     if(!newName.equals(name)) {
-                        return newName;
+                        resolved = newName;
+                        break;
                     }
                 }
-                return name;
+
+                this.methods.put(owner, name, descriptor, resolved);
+                return resolved;
             }
 
             @Override
             public String mapFieldName(String owner, String name, String descriptor) {
-                for(ClassDef classDef : getClasses(getObfName(owner, direction, initial, result), direction)) {
-                    String middleName = classDef.getName(middle);
-                    String initialName = classDef.getName(input);
+                // the descriptor isn't part of the field lookup, so every descriptor shares one entry
+                String cached = this.fields.get(owner, name, "");
+                if (cached != null) {
+                    return cached;
+                }
+
+                String resolved = name;
+                for(Pair<String, String> classNames : getClasses(getObfName(owner, direction, initial, result), direction, this.classes)) {
+                    String middleName = classNames.getLeft();
+                    String initialName = classNames.getRight();
 
                     String newName = result.mapFieldName(middleName, initial.mapFieldName(initialName, name, ""), "");
                     if(!newName.equals(name)) {
-                        return newName;
+                        resolved = newName;
+                        break;
                     }
                 }
-                return name;
+
+                this.fields.put(owner, name, "", resolved);
+                return resolved;
             }
 
             @Override
@@ -175,58 +177,65 @@ public class YarnMappingsProvider implements IMappingsProvider {
     @Override
     public Map<String, Pair<Map<String, String>, List<String>>> getContext(Side side, boolean prefix) {
         if (side == Side.NAMED) {
-            Map<String, Pair<Map<String, String>, List<String>>> context = new HashMap<>();
-
             Remapper remapperObf = this.getRemapper(Direction.TO_OBFUSCATED);
-            Remapper obfToIntermediary = TinyRemapper.create(this.intermediaryTree, "official", "intermediary");
 
-            for (ClassDef classDef : namedTree.getClasses()) {
+            return new LazyContext(this.namedToIntermediary.getClassNames().keySet(), className -> {
                 Pair<Map<String, String>, List<String>> pair = new Pair<>(new HashMap<>(), new ArrayList<>());
-                addAllMethods(namedTree, classDef, pair.getLeft(), remapperObf, obfToIntermediary);
-                context.put(classDef.getName("named"), pair);
-            }
-
-            return context;
+                addAllMethods(className, pair.getLeft(), remapperObf);
+                return pair;
+            });
         }
         return null;
     }
 
-    private void addAllMethods(TinyTree tinyTree, ClassDef classDef, Map<String, String> methods, Remapper remapperObf, Remapper obfToIntermediary) {
-        for (MethodDef methodDef : classDef.getMethods()) {
-            methods.put(methodDef.getName("named"), methodDef.getDescriptor("named"));
+    private void addAllMethods(String className, Map<String, String> methods, Remapper remapperObf) {
+        MemberTable<String> classMethods = this.namedToIntermediary.getMethods(className);
+        if (classMethods != null) {
+            for (int i = 0; i < classMethods.capacity(); i++) {
+                if (classMethods.getName(i) != null) {
+                    methods.put(classMethods.getName(i), classMethods.getDescriptor(i));
+                }
+            }
         }
 
-        if (this.parentClasses.get(remapperObf.map(classDef.getName("named"))) != null) {
-            for (String parentClass : this.parentClasses.get(remapperObf.map(classDef.getName("named")))) {
-                ClassDef parentClassDef = tinyTree.getDefaultNamespaceClassMap().get(obfToIntermediary.map(parentClass));
-                if (parentClassDef != null) {
-                    addAllMethods(tinyTree, parentClassDef, methods, remapperObf, obfToIntermediary);
+        if (this.parentClasses.get(remapperObf.map(className)) != null) {
+            for (String parentClass : this.parentClasses.get(remapperObf.map(className))) {
+                String intermediaryName = this.officialToIntermediary.getClassNames().get(parentClass);
+                if (intermediaryName != null && this.intermediaryToNamed.getClassNames().containsKey(intermediaryName)) {
+                    addAllMethods(this.intermediaryToNamed.map(intermediaryName), methods, remapperObf);
                 }
             }
         }
     }
 
-    private List<ClassDef> getClasses(String obfName, Direction direction) {
-        List<ClassDef> parents = new ArrayList<>();
+    /**
+     * Pairs of the intermediary name and the input name of the class and all of its parents.
+     * The flattened list is memoized per class in {@code cache}, so it is only built once per remapper.
+     */
+    private List<Pair<String, String>> getClasses(String obfName, Direction direction, Map<String, List<Pair<String, String>>> cache) {
+        List<Pair<String, String>> cached = cache.get(obfName);
+        if (cached != null) {
+            return cached;
+        }
+
+        List<Pair<String, String>> parents = new ArrayList<>();
 
-        ClassDef classDef = this.intermediaryTree.getDefaultNamespaceClassMap().get(obfName);
-        if(classDef != null) {
-            ClassDef toAdd;
+        String intermediaryName = this.officialToIntermediary.getClassNames().get(obfName);
+        if(intermediaryName != null) {
             if(direction == Direction.TO_NAMED) {
-                toAdd = classDef;
-            } else {
-                toAdd = this.namedTree.getDefaultNamespaceClassMap().get(classDef.getName("intermediary"));
+                parents.add(new Pair<>(intermediaryName, obfName));
+            } else if (this.intermediaryToNamed.getClassNames().containsKey(intermediaryName)) {
+                parents.add(new Pair<>(intermediaryName, this.intermediaryToNamed.map(intermediaryName)));
             }
-
-            parents.add(toAdd);
         }
 
         if(parentClasses.get(obfName) != null) {
             for(String string : parentClasses.get(obfName)) {
-                parents.addAll(this.getClasses(string, direction));
+                parents.addAll(this.getClasses(string, direction, cache));
             }
         }
 
+        cache.put(obfName, parents);
         return parents;
     }
 
@@ -0,0 +1,253 @@
+package com.github.glassmc.kiln.remapper;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+import net.fabricmc.mapping.util.EntryTriple;
+
+/**
+ * Binary form of already parsed mappings, so the text mappings only have to be parsed when they change.
+ * Every string is stored once in a pool and the tables refer to it by index. The checksum of the source
+ * mappings is stored in the header, a file with a different checksum or format version is ignored.
+ */
+public class CompiledMappings {
+
+    private static final int MAGIC = 0x4B494C4E;
+    private static final int FORMAT_VERSION = 1;
+
+    private static final byte HASH_REMAPPER = 0;
+    private static final byte UNIQUE_REMAPPER = 1;
+
+    public static long checksum(File... sources) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[8192];
+
+        for (File source : sources) {
+            try (InputStream inputStream = Files.newInputStream(source.toPath())) {
+                int read;
+                while ((read = inputStream.read(buffer)) != -1) {
+                    crc.update(buffer, 0, read);
+                }
+            }
+        }
+
+        return crc.getValue();
+    }
+
+    public static ReversibleRemapper[] read(File file, long checksum) {
+        if (!file.exists()) {
+            return null;
+        }
+
+        // the tables are copied into maps anyway, so the file is streamed and closed as soon as it is read
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION || input.readLong() != checksum) {
+                return null;
+            }
+
+            String[] pool = new String[input.readInt()];
+            for (int i = 0; i < pool.length; i++) {
+                int length = input.readInt();
+                if (length == -1) {
+                    continue;
+                }
+
+                byte[] bytes = new byte[length];
+                input.readFully(bytes);
+                pool[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+
+            ReversibleRemapper[] remappers = new ReversibleRemapper[input.readInt()];
+            for (int i = 0; i < remappers.length; i++) {
+                byte type = input.readByte();
+                if (type == HASH_REMAPPER) {
+                    Map<String, String> classNames = readStringMap(input, pool);
+                    Map<EntryTriple, String> fieldNames = readMemberMap(input, pool);
+                    Map<EntryTriple, String> methodNames = readMemberMap(input, pool);
+
+                    int variableCount = input.readInt();
+                    Map<EntryTriple, Map<Integer, String>> variableNames = new HashMap<>(variableCount * 2);
+                    for (int j = 0; j < variableCount; j++) {
+                        EntryTriple method = new EntryTriple(pool[input.readInt()], pool[input.readInt()], pool[input.readInt()]);
+                        int count = input.readInt();
+                        Map<Integer, String> variables = new HashMap<>(count * 2);
+                        for (int k = 0; k < count; k++) {
+                            variables.put(input.readInt(), pool[input.readInt()]);
+                        }
+                        variableNames.put(method, variables);
+                    }
+
+                    remappers[i] = new HashRemapper(classNames, fieldNames, methodNames, variableNames);
+                } else if (type == UNIQUE_REMAPPER) {
+                    remappers[i] = new UniqueRemapper(readStringMap(input, pool), readStringMap(input, pool), readStringMap(input, pool), readStringMap(input, pool));
+                } else {
+                    return null;
+                }
+            }
+
+            return remappers;
+        } catch (IOException | RuntimeException e) {
+            System.out.printf("Ignoring compiled mappings %s (%s)%n", file.getName(), e);
+            return null;
+        }
+    }
+
+    public static void write(File file, long checksum, ReversibleRemapper... remappers) throws IOException {
+        Map<String, Integer> pool = new LinkedHashMap<>();
+        for (ReversibleRemapper remapper : remappers) {
+            if (remapper instanceof HashRemapper) {
+                HashRemapper hashRemapper = (HashRemapper) remapper;
+                poolStrings(pool, hashRemapper.classNames);
+                poolMembers(pool, hashRemapper.fieldTables);
+                poolMembers(pool, hashRemapper.methodTables);
+                HashRemapper.forEachMember(hashRemapper.variableTables, (owner, name, descriptor, variables) -> {
+                    poolMember(pool, owner, name, descriptor);
+                    for (String variable : variables.values()) {
+                        pool.putIfAbsent(variable, pool.size());
+                    }
+                });
+            } else if (remapper instanceof UniqueRemapper) {
+                UniqueRemapper uniqueRemapper = (UniqueRemapper) remapper;
+                poolStrings(pool, uniqueRemapper.classNames);
+                poolStrings(pool, uniqueRemapper.fieldNames);
+                poolStrings(pool, uniqueRemapper.methodNames);
+                poolStrings(pool, uniqueRemapper.variableNames);
+            } else {
+                throw new IllegalArgumentException("Can't compile " + remapper.getClass().getName());
+            }
+        }
+
+        file.getParentFile().mkdirs();
+        File temp = new File(file.getAbsolutePath() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp.toPath())))) {
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            output.writeLong(checksum);
+
+            output.writeInt(pool.size());
+            for (String string : pool.keySet()) {
+                if (string == null) {
+                    output.writeInt(-1);
+                    continue;
+                }
+
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                output.writeInt(bytes.length);
+                output.write(bytes);
+            }
+
+            output.writeInt(remappers.length);
+            for (ReversibleRemapper remapper : remappers) {
+                if (remapper instanceof HashRemapper) {
+                    HashRemapper hashRemapper = (HashRemapper) remapper;
+                    output.writeByte(HASH_REMAPPER);
+                    writeStringMap(output, pool, hashRemapper.classNames);
+                    writeMembers(output, pool, hashRemapper.fieldTables);
+                    writeMembers(output, pool, hashRemapper.methodTables);
+
+                    output.writeInt(HashRemapper.countMembers(hashRemapper.variableTables));
+                    for (Map.Entry<String, MemberTable<Map<Integer, String>>> entry : hashRemapper.variableTables.entrySet()) {
+                        MemberTable<Map<Integer, String>> table = entry.getValue();
+                        for (int i = 0; i < table.capacity(); i++) {
+                            if (table.getName(i) == null) {
+                                continue;
+                            }
+
+                            writeMember(output, pool, entry.getKey(), table.getName(i), table.getDescriptor(i));
+                            output.writeInt(table.getValue(i).size());
+                            for (Map.Entry<Integer, String> variable : table.getValue(i).entrySet()) {
+                                output.writeInt(variable.getKey());
+                                output.writeInt(pool.get(variable.getValue()));
+                            }
+                        }
+                    }
+                } else {
+                    UniqueRemapper uniqueRemapper = (UniqueRemapper) remapper;
+                    output.writeByte(UNIQUE_REMAPPER);
+                    writeStringMap(output, pool, uniqueRemapper.classNames);
+                    writeStringMap(output, pool, uniqueRemapper.fieldNames);
+                    writeStringMap(output, pool, uniqueRemapper.methodNames);
+                    writeStringMap(output, pool, uniqueRemapper.variableNames);
+                }
+            }
+        }
+
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            // a file another build is still reading can't be replaced on some platforms, it is retried next time
+            System.out.printf("Failed to replace compiled mappings %s (%s)%n", file.getName(), e);
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    private static Map<String, String> readStringMap(DataInputStream input, String[] pool) throws IOException {
+        int count = input.readInt();
+        Map<String, String> map = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            map.put(pool[input.readInt()], pool[input.readInt()]);
+        }
+        return map;
+    }
+
+    private static Map<EntryTriple, String> readMemberMap(DataInputStream input, String[] pool) throws IOException {
+        int count = input.readInt();
+        Map<EntryTriple, String> map = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            map.put(new EntryTriple(pool[input.readInt()], pool[input.readInt()], pool[input.readInt()]), pool[input.readInt()]);
+        }
+        return map;
+    }
+
+    private static void poolStrings(Map<String, Integer> pool, Map<String, String> map) {
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            pool.putIfAbsent(entry.getKey(), pool.size());
+            pool.putIfAbsent(entry.getValue(), pool.size());
+        }
+    }
+
+    private static void poolMembers(Map<String, Integer> pool, Map<String, MemberTable<String>> tables) {
+        HashRemapper.forEachMember(tables, (owner, name, descriptor, value) -> {
+            poolMember(pool, owner, name, descriptor);
+            pool.putIfAbsent(value, pool.size());
+        });
+    }
+
+    private static void poolMember(Map<String, Integer> pool, String owner, String name, String descriptor) {
+        pool.putIfAbsent(owner, pool.size());
+        pool.putIfAbsent(name, pool.size());
+        pool.putIfAbsent(descriptor, pool.size());
+    }
+
+    private static void writeStringMap(DataOutputStream output, Map<String, Integer> pool, Map<String, String> map) throws IOException {
+        output.writeInt(map.size());
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            output.writeInt(pool.get(entry.getKey()));
+            output.writeInt(pool.get(entry.getValue()));
+        }
+    }
+
+    private static void writeMembers(DataOutputStream output, Map<String, Integer> pool, Map<String, MemberTable<String>> tables) throws IOException {
+        output.writeInt(HashRemapper.countMembers(tables));
+        for (Map.Entry<String, MemberTable<String>> entry : tables.entrySet()) {
+            MemberTable<String> table = entry.getValue();
+            for (int i = 0; i < table.capacity(); i++) {
+                if (table.getName(i) != null) {
+                    writeMember(output, pool, entry.getKey(), table.getName(i), table.getDescriptor(i));
+                    output.writeInt(pool.get(table.getValue(i)));
+                }
+            }
+        }
+    }
+
+    private static void writeMember(DataOutputStream output, Map<String, Integer> pool, String owner, String name, String descriptor) throws IOException {
+        output.writeInt(pool.get(owner));
+        output.writeInt(pool.get(name));
+        output.writeInt(pool.get(descriptor));
+    }
+
+}
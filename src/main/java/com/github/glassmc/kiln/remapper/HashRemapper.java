@@ -8,15 +8,51 @@ import net.fabricmc.mapping.util.EntryTriple;
 public class HashRemapper extends ReversibleRemapper {
 
     protected Map<String, String> classNames;
-    protected Map<EntryTriple, String> fieldNames;
-    protected Map<EntryTriple, String> methodNames;
-    protected Map<EntryTriple, Map<Integer, String>> variableNames;
+
+    // members keyed by owner, the maps passed to the constructor aren't kept
+    protected final Map<String, MemberTable<String>> fieldTables;
+    protected final Map<String, MemberTable<String>> methodTables;
+    protected final Map<String, MemberTable<Map<Integer, String>>> variableTables;
 
     public HashRemapper(Map<String, String> classNames, Map<EntryTriple, String> fieldNames, Map<EntryTriple, String> methodNames, Map<EntryTriple, Map<Integer, String>> variableNames) {
         this.classNames = classNames;
-        this.fieldNames = fieldNames;
-        this.methodNames = methodNames;
-        this.variableNames = variableNames;
+
+        this.fieldTables = toTables(fieldNames);
+        this.methodTables = toTables(methodNames);
+        this.variableTables = toTables(variableNames);
+    }
+
+    private static <V> Map<String, MemberTable<V>> toTables(Map<EntryTriple, V> members) {
+        Map<String, MemberTable<V>> tables = new HashMap<>();
+        members.forEach((key, value) -> {
+            if (key.getName() != null) {
+                tables.computeIfAbsent(key.getOwner(), k -> new MemberTable<>()).put(key.getName(), key.getDescriptor(), value);
+            }
+        });
+        return tables;
+    }
+
+    private static <V> V get(Map<String, MemberTable<V>> tables, String owner, String name, String descriptor) {
+        MemberTable<V> table = tables.get(owner);
+        return table == null ? null : table.get(name, descriptor);
+    }
+
+    protected static <V> void forEachMember(Map<String, MemberTable<V>> tables, MemberVisitor<V> visitor) {
+        tables.forEach((owner, table) -> {
+            for (int i = 0; i < table.capacity(); i++) {
+                if (table.getName(i) != null) {
+                    visitor.visit(owner, table.getName(i), table.getDescriptor(i), table.getValue(i));
+                }
+            }
+        });
+    }
+
+    protected static int countMembers(Map<String, ? extends MemberTable<?>> tables) {
+        int count = 0;
+        for (MemberTable<?> table : tables.values()) {
+            count += table.size();
+        }
+        return count;
     }
 
     @Override
@@ -26,17 +62,19 @@ public class HashRemapper extends ReversibleRemapper {
 
     @Override
     public String mapFieldName(final String owner, final String name, final String descriptor) {
-        return fieldNames.getOrDefault(new EntryTriple(owner, name, ""), name);
+        String newName = get(fieldTables, owner, name, "");
+        return newName == null ? name : newName;
     }
 
     @Override
     public String mapMethodName(final String owner, final String name, final String descriptor) {
-        return methodNames.getOrDefault(new EntryTriple(owner, name, descriptor), name);
+        String newName = get(methodTables, owner, name, descriptor);
+        return newName == null ? name : newName;
     }
 
     @Override
     public String mapVariableName(String owner, String methodOwner, String methodDesc, String name, int index) {
-        Map<Integer, String> methodVariable = variableNames.get(new EntryTriple(owner, methodOwner, methodDesc));
+        Map<Integer, String> methodVariable = get(variableTables, owner, methodOwner, methodDesc);
         if (methodVariable == null) return name;
 
         return methodVariable.getOrDefault(index, name);
@@ -51,17 +89,17 @@ public class HashRemapper extends ReversibleRemapper {
 
         classNames.forEach((key, value) -> reverseClassNames.put(value, key));
 
-        fieldNames.forEach(
-                        (key, value) -> reverseFieldNames.put(
-                                new EntryTriple(map(key.getOwner()), value,
-                                        key.getDescriptor().isEmpty() ? "" : mapDesc(key.getDescriptor())),
-                                key.getName()));
+        forEachMember(fieldTables,
+                (owner, name, descriptor, value) -> reverseFieldNames.put(
+                        new EntryTriple(map(owner), value,
+                                descriptor.isEmpty() ? "" : mapDesc(descriptor)),
+                        name));
 
-        methodNames.forEach((key, value) -> {
-            if (!key.getDescriptor().isEmpty()) {
+        forEachMember(methodTables, (owner, name, descriptor, value) -> {
+            if (!descriptor.isEmpty()) {
                 reverseMethodNames.put(
-                        new EntryTriple(map(key.getOwner()), value, mapMethodDesc(key.getDescriptor())),
-                        key.getName());
+                        new EntryTriple(map(owner), value, mapMethodDesc(descriptor)),
+                        name);
             }
         });
 
@@ -76,11 +114,11 @@ public class HashRemapper extends ReversibleRemapper {
         Map<String, String> fieldNames = new HashMap<>();
         Map<String, String> methodNames = new HashMap<>();
 
-        this.fieldNames.forEach((key, value) -> {
-            fieldNames.put(key.getName(), value);
+        forEachMember(this.fieldTables, (owner, name, descriptor, value) -> {
+            fieldNames.put(name, value);
         });
-        this.methodNames.forEach((key, value) -> {
-            methodNames.put(key.getName(), value);
+        forEachMember(this.methodTables, (owner, name, descriptor, value) -> {
+            methodNames.put(name, value);
         });
 
         return new UniqueRemapper(methodNames, fieldNames, methodNames, new HashMap<>());
@@ -90,8 +128,26 @@ public class HashRemapper extends ReversibleRemapper {
         return classNames;
     }
 
+    /**
+     * Every method mapping, built from the tables on each call.
+     */
     public Map<EntryTriple, String> getMethodNames() {
+        Map<EntryTriple, String> methodNames = new HashMap<>();
+        forEachMember(methodTables, (owner, name, descriptor, value) -> methodNames.put(new EntryTriple(owner, name, descriptor), value));
         return methodNames;
     }
 
+    /**
+     * The methods of a single class, or null if it has none.
+     */
+    public MemberTable<String> getMethods(String owner) {
+        return methodTables.get(owner);
+    }
+
+    public interface MemberVisitor<V> {
+
+        void visit(String owner, String name, String descriptor, V value);
+
+    }
+
 }
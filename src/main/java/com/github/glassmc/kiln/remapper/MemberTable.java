@@ -0,0 +1,101 @@
+package com.github.glassmc.kiln.remapper;
+
+import java.util.Objects;
+
+/**
+ * Open addressed table of the members of a single class, keyed by name and descriptor.
+ * Lookups don't allocate and only use the cached hash codes of the strings. A null name is never stored.
+ */
+public class MemberTable<V> {
+
+    private String[] names = new String[8];
+    private String[] descriptors = new String[8];
+    private Object[] values = new Object[8];
+    private int size;
+
+    public V get(String name, String descriptor) {
+        if (name == null) {
+            return null;
+        }
+
+        int mask = this.names.length - 1;
+        for (int i = hash(name, descriptor) & mask; this.names[i] != null; i = (i + 1) & mask) {
+            if (this.names[i].equals(name) && Objects.equals(this.descriptors[i], descriptor)) {
+                return this.getValue(i);
+            }
+        }
+        return null;
+    }
+
+    public void put(String name, String descriptor, V value) {
+        if (name == null) {
+            return;
+        }
+
+        if ((this.size + 1) * 2 > this.names.length) {
+            this.resize(this.names.length * 2);
+        }
+
+        int mask = this.names.length - 1;
+        int i = hash(name, descriptor) & mask;
+        for (; this.names[i] != null; i = (i + 1) & mask) {
+            if (this.names[i].equals(name) && Objects.equals(this.descriptors[i], descriptor)) {
+                this.values[i] = value;
+                return;
+            }
+        }
+
+        this.names[i] = name;
+        this.descriptors[i] = descriptor;
+        this.values[i] = value;
+        this.size++;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Slots are iterated from 0 to {@link #capacity()}, skipping those where {@link #getName(int)} is null.
+     */
+    public int capacity() {
+        return this.names.length;
+    }
+
+    public String getName(int slot) {
+        return this.names[slot];
+    }
+
+    public String getDescriptor(int slot) {
+        return this.descriptors[slot];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V getValue(int slot) {
+        return (V) this.values[slot];
+    }
+
+    @SuppressWarnings("unchecked")
+    private void resize(int capacity) {
+        String[] oldNames = this.names;
+        String[] oldDescriptors = this.descriptors;
+        Object[] oldValues = this.values;
+
+        this.names = new String[capacity];
+        this.descriptors = new String[capacity];
+        this.values = new Object[capacity];
+        this.size = 0;
+
+        for (int i = 0; i < oldNames.length; i++) {
+            if (oldNames[i] != null) {
+                this.put(oldNames[i], oldDescriptors[i], (V) oldValues[i]);
+            }
+        }
+    }
+
+    private static int hash(String name, String descriptor) {
+        int hash = name.hashCode() * 31 + (descriptor == null ? 0 : descriptor.hashCode());
+        return hash ^ (hash >>> 16);
+    }
+
+}
@@ -65,8 +65,8 @@ public class UniqueRemapper extends ReversibleRemapper {
         Map<String, EntryTriple> fromFieldNamesReversed = new HashMap<>();
         Map<String, List<EntryTriple>> fromMethodNamesReversed = new HashMap<>();
 
-        from.fieldNames.forEach((key, value) -> fromFieldNamesReversed.put(value, key));
-        from.methodNames.forEach((key, value) -> fromMethodNamesReversed.computeIfAbsent(value, k -> new ArrayList<>()).add(key));
+        HashRemapper.forEachMember(from.fieldTables, (owner, name, descriptor, value) -> fromFieldNamesReversed.put(value, new EntryTriple(owner, name, descriptor)));
+        HashRemapper.forEachMember(from.methodTables, (owner, name, descriptor, value) -> fromMethodNamesReversed.computeIfAbsent(value, k -> new ArrayList<>()).add(new EntryTriple(owner, name, descriptor)));
 
         this.fieldNames.forEach((key, value) -> {
             EntryTriple entry = fromFieldNamesReversed.get(key);
@@ -1,11 +1,9 @@
 package com.github.glassmc.kiln.task;
 
-import com.github.glassmc.kiln.Pair;
 import com.github.glassmc.kiln.Util;
 import com.github.glassmc.kiln.KilnPlugin;
 import com.github.glassmc.kiln.KilnExtension;
 import com.github.glassmc.kiln.environment.Environment;
-import com.github.glassmc.kiln.mappings.IMappingsProvider;
 import com.github.glassmc.kiln.mappings.ObfuscatedMappingsProvider;
 import org.gradle.api.DefaultTask;
 import org.gradle.api.Project;
@@ -29,19 +27,21 @@ public abstract class GenerateRunConfiguration extends DefaultTask {
         String environment = argumentsSplit[1];
         String version = argumentsSplit[2];
 
-        IMappingsProvider mappingsProvider = null;
-        for (Pair<IMappingsProvider, Boolean> mappingsProviderPair : KilnPlugin.getMainInstance().getAllMappingsProviders()) {
-            if (mappingsProviderPair.getLeft().getVersion().equals(version)) {
-                mappingsProvider = mappingsProviderPair.getLeft();
+        // only the mappings version is needed, so the mappings themselves aren't loaded
+        String mappingsVersion = null;
+        for (String minecraftDependency : KilnPlugin.getMainInstance().getAllMinecraftDependencies()) {
+            String[] coordinates = KilnPlugin.parseMinecraftDependency(minecraftDependency);
+            if (coordinates[1].equals(version)) {
+                mappingsVersion = coordinates[3];
             }
         }
 
         switch (ide) {
             case "idea":
-                generateIntelliJRunConfiguration(environment, version, mappingsProvider.getMappingsVersion());
+                generateIntelliJRunConfiguration(environment, version, mappingsVersion);
                 break;
             case "eclipse":
-                generateEclipseRunConfiguration(environment, version, mappingsProvider.getMappingsVersion());
+                generateEclipseRunConfiguration(environment, version, mappingsVersion);
         }
     }
 
@@ -109,7 +109,7 @@ public abstract class GenerateRunConfiguration extends DefaultTask {
         String programArguments = "--accessToken 0 --version " + environment1.getVersion(version) + " --userProperties {} --assetsDir " + new File(pluginCache, "minecraft/" + version + "/assets/");
 
         try {
-            JSONObject versionManifest = Util.getVersionManifest(version);
+            JSONObject versionManifest = Util.getVersionManifest(pluginCache, version);
             String id = versionManifest.getJSONObject("assetIndex").getString("id");
             programArguments = programArguments + " --assetIndex " + id;
         } catch (IOException e) {
@@ -172,7 +172,7 @@ public abstract class GenerateRunConfiguration extends DefaultTask {
         String programArguments = "--accessToken 0 --version " + environment1.getVersion(version) + " --userProperties {} --assetsDir " + new File(pluginCache, "minecraft/" + version + "/assets/");
 
         try {
-            JSONObject versionManifest = Util.getVersionManifest(version);
+            JSONObject versionManifest = Util.getVersionManifest(pluginCache, version);
             String id = versionManifest.getJSONObject("assetIndex").getString("id");
             programArguments = programArguments + " --assetIndex " + id;
         } catch (IOException e) {
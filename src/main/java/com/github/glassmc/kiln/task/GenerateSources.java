@@ -0,0 +1,70 @@
+package com.github.glassmc.kiln.task;
+
+import com.github.glassmc.kiln.Util;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.OutputFiles;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.workers.WorkAction;
+import org.gradle.workers.WorkParameters;
+import org.gradle.workers.WorkQueue;
+import org.gradle.workers.WorkerExecutor;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decompiles the Minecraft jars the project depends on into their sources jars.
+ * Every jar is decompiled in a forked worker whose heap is set by kiln.decompileHeap.
+ */
+public abstract class GenerateSources extends DefaultTask {
+
+    @Inject
+    public abstract WorkerExecutor getWorkerExecutor();
+
+    @InputFiles
+    public abstract ConfigurableFileCollection getMappedJars();
+
+    @OutputFiles
+    public List<File> getSourcesJars() {
+        List<File> sourcesJars = new ArrayList<>();
+        for (File mappedJar : this.getMappedJars()) {
+            sourcesJars.add(Util.getSourcesJar(mappedJar));
+        }
+        return sourcesJars;
+    }
+
+    @TaskAction
+    public void run() {
+        WorkQueue workQueue = this.getWorkerExecutor().processIsolation(spec -> spec.forkOptions(options -> {
+            options.setMaxHeapSize(System.getProperty("kiln.decompileHeap", "3g"));
+            options.systemProperty("kiln.threads", Util.getThreadCount());
+        }));
+
+        for (File mappedJar : this.getMappedJars()) {
+            if (!Util.getSourcesJar(mappedJar).exists()) {
+                workQueue.submit(Decompile.class, parameters -> parameters.getMappedJar().set(mappedJar));
+            }
+        }
+    }
+
+    public interface Parameters extends WorkParameters {
+
+        RegularFileProperty getMappedJar();
+
+    }
+
+    public abstract static class Decompile implements WorkAction<Parameters> {
+
+        @Override
+        public void execute() {
+            Util.generateSources(this.getParameters().getMappedJar().get().getAsFile());
+        }
+
+    }
+
+}
@@ -0,0 +1,199 @@
+package com.github.glassmc.kiln.task;
+
+import com.github.glassmc.kiln.KilnPlugin;
+import com.github.glassmc.kiln.Util;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.SetProperty;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.workers.WorkAction;
+import org.gradle.workers.WorkParameters;
+import org.gradle.workers.WorkQueue;
+import org.gradle.workers.WorkerExecutor;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Downloads, remaps and installs the Minecraft jars the project depends on. Every dependency is set up by a forked
+ * worker whose heap is set by kiln.setupHeap, and records the files it installed to the kiln cache under build/kiln.
+ * The task is up-to-date as long as the dependencies didn't change and every recorded file still exists.
+ */
+public abstract class SetupMinecraft extends DefaultTask {
+
+    public SetupMinecraft() {
+        this.getOutputs().upToDateWhen(task -> ((SetupMinecraft) task).isInstalled());
+    }
+
+    @Inject
+    public abstract WorkerExecutor getWorkerExecutor();
+
+    @Input
+    public abstract SetProperty<String> getMinecraftDependencies();
+
+    @Internal
+    public abstract DirectoryProperty getPluginCache();
+
+    @OutputDirectory
+    public abstract DirectoryProperty getRecords();
+
+    /**
+     * The mapped jars of the dependencies, they only exist once the task has run.
+     */
+    @Internal
+    public List<File> getMappedJars() {
+        File pluginCache = this.getPluginCache().get().getAsFile();
+
+        List<File> mappedJars = new ArrayList<>();
+        for (String minecraftDependency : this.getMinecraftDependencies().get()) {
+            String[] coordinates = KilnPlugin.parseMinecraftDependency(minecraftDependency);
+            mappedJars.add(Util.getMappedJar(pluginCache, coordinates[0], coordinates[1], coordinates[2], coordinates[3]));
+        }
+        return mappedJars;
+    }
+
+    /**
+     * The mapped jar and libraries recorded for the dependency on the given environment and version, or null if the
+     * project doesn't depend on it or it hasn't been set up.
+     */
+    @Internal
+    public List<File> getInstalledFiles(String environment, String version) {
+        for (String minecraftDependency : this.getMinecraftDependencies().get()) {
+            String[] coordinates = KilnPlugin.parseMinecraftDependency(minecraftDependency);
+            if (coordinates[0].equals(environment) && coordinates[1].equals(version)) {
+                return readRecord(this.getRecord(minecraftDependency));
+            }
+        }
+        return null;
+    }
+
+    private boolean isInstalled() {
+        for (String minecraftDependency : this.getMinecraftDependencies().get()) {
+            List<File> installedFiles = readRecord(this.getRecord(minecraftDependency));
+            if (installedFiles == null) {
+                return false;
+            }
+
+            for (File installedFile : installedFiles) {
+                if (!installedFile.exists()) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Records a dependency that was set up outside of the task.
+     */
+    public void record(String minecraftDependency, File mappedJar) {
+        writeRecord(this.getRecord(minecraftDependency), this.getPluginCache().get().getAsFile(), minecraftDependency, mappedJar);
+    }
+
+    private File getRecord(String minecraftDependency) {
+        return new File(this.getRecords().get().getAsFile(), minecraftDependency.replace(':', '-') + ".txt");
+    }
+
+    @TaskAction
+    public void run() {
+        WorkQueue workQueue = this.getWorkerExecutor().processIsolation(spec -> spec.forkOptions(options -> {
+            options.setMaxHeapSize(System.getProperty("kiln.setupHeap", "2g"));
+            options.systemProperty("kiln.threads", Util.getThreadCount());
+            options.systemProperty("kiln.downloadThreads", Util.getDownloadThreadCount());
+            options.systemProperty("kiln.offline", KilnPlugin.isOffline());
+            for (String property : new String[] { "kiln.assetsUrl", "kiln.mappingsIndexTtl" }) {
+                if (System.getProperty(property) != null) {
+                    options.systemProperty(property, System.getProperty(property));
+                }
+            }
+        }));
+
+        for (String minecraftDependency : this.getMinecraftDependencies().get()) {
+            File record = this.getRecord(minecraftDependency);
+            workQueue.submit(Setup.class, parameters -> {
+                parameters.getPluginCache().set(this.getPluginCache());
+                parameters.getMinecraftDependency().set(minecraftDependency);
+                parameters.getRecord().set(record);
+            });
+        }
+    }
+
+    /**
+     * Writes the mapped jar and, for the client, the mapped libraries of a dependency to {@code record}.
+     */
+    public static void writeRecord(File record, File pluginCache, String minecraftDependency, File mappedJar) {
+        String[] coordinates = KilnPlugin.parseMinecraftDependency(minecraftDependency);
+
+        List<String> lines = new ArrayList<>();
+        lines.add(mappedJar.getAbsolutePath());
+        try {
+            if (coordinates[0].equals("client")) {
+                for (File mappedLibrary : Util.getMappedLibraries(pluginCache, coordinates[1])) {
+                    lines.add(mappedLibrary.getAbsolutePath());
+                }
+            }
+
+            record.getParentFile().mkdirs();
+            Files.write(record.toPath(), lines, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static List<File> readRecord(File record) {
+        if (!record.exists()) {
+            return null;
+        }
+
+        List<File> files = new ArrayList<>();
+        try {
+            for (String line : Files.readAllLines(record.toPath(), StandardCharsets.UTF_8)) {
+                if (!line.isEmpty()) {
+                    files.add(new File(line));
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+        return files;
+    }
+
+    public interface Parameters extends WorkParameters {
+
+        DirectoryProperty getPluginCache();
+
+        Property<String> getMinecraftDependency();
+
+        RegularFileProperty getRecord();
+
+    }
+
+    /**
+     * Sets up one dependency in the worker process, the daemon loads its mappings provider from the kiln cache afterwards.
+     */
+    public abstract static class Setup implements WorkAction<Parameters> {
+
+        @Override
+        public void execute() {
+            File pluginCache = this.getParameters().getPluginCache().get().getAsFile();
+            String minecraftDependency = this.getParameters().getMinecraftDependency().get();
+            String[] coordinates = KilnPlugin.parseMinecraftDependency(minecraftDependency);
+
+            File mappedJar = Util.setupDependency(pluginCache, coordinates[0], coordinates[1], coordinates[2], coordinates[3], false).getRight();
+            writeRecord(this.getParameters().getRecord().get().getAsFile(), pluginCache, minecraftDependency, mappedJar);
+        }
+
+    }
+
+}
@@ -0,0 +1,195 @@
+package com.github.glassmc.kiln;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.FileUtils;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs {@link Util#downloadAssets} against assets served from a local {@link HttpServer}.
+ */
+public class AssetDownloadTest {
+
+    private final Map<String, byte[]> served = new ConcurrentHashMap<>();
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private final List<String> ranges = new CopyOnWriteArrayList<>();
+
+    private HttpServer server;
+    private File assets;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.server.createContext("/", this::handle);
+        this.server.start();
+
+        this.assets = Files.createTempDirectory("kiln-assets").toFile();
+        System.setProperty("kiln.assetsUrl", this.getUrl() + "/objects");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        System.clearProperty("kiln.assetsUrl");
+        this.server.stop(0);
+        FileUtils.deleteDirectory(this.assets);
+    }
+
+    @Test
+    public void skipsObjectsAlreadyOnDisk() throws IOException {
+        byte[] content = "already here".getBytes(StandardCharsets.UTF_8);
+        String hash = this.serveObject(content);
+
+        File objectFile = this.getObjectFile(hash);
+        FileUtils.writeByteArrayToFile(objectFile, content);
+
+        Util.downloadAssets(this.createVersionManifest(hash, content.length), this.assets);
+
+        assertFalse(this.requests.contains(this.getObjectPath(hash)));
+        assertArrayEquals(content, FileUtils.readFileToByteArray(objectFile));
+        assertTrue(new File(this.assets, ".complete").exists());
+    }
+
+    @Test
+    public void resumesPartialDownloads() throws IOException {
+        byte[] content = "an asset that was interrupted halfway through".getBytes(StandardCharsets.UTF_8);
+        String hash = this.serveObject(content);
+
+        File objectFile = this.getObjectFile(hash);
+        FileUtils.writeByteArrayToFile(new File(objectFile.getAbsolutePath() + ".part"), Arrays.copyOf(content, 10));
+
+        Util.downloadAssets(this.createVersionManifest(hash, content.length), this.assets);
+
+        assertTrue(this.ranges.contains("bytes=10-"));
+        assertArrayEquals(content, FileUtils.readFileToByteArray(objectFile));
+        assertFalse(new File(objectFile.getAbsolutePath() + ".part").exists());
+        assertTrue(new File(this.assets, ".complete").exists());
+    }
+
+    @Test
+    public void rejectsObjectsWithTheWrongHash() throws IOException {
+        byte[] content = "the expected asset".getBytes(StandardCharsets.UTF_8);
+        String hash = this.serveObject(content);
+        this.served.put(this.getObjectPath(hash), "something else entirely".getBytes(StandardCharsets.UTF_8));
+
+        Util.downloadAssets(this.createVersionManifest(hash, content.length), this.assets);
+
+        File objectFile = this.getObjectFile(hash);
+        assertFalse(objectFile.exists());
+        assertFalse(new File(objectFile.getAbsolutePath() + ".part").exists());
+        assertFalse(new File(this.assets, ".complete").exists());
+    }
+
+    @Test
+    public void finishesTheOtherObjectsWhenOneFails() throws IOException {
+        byte[] missingContent = "an asset the server doesn't have".getBytes(StandardCharsets.UTF_8);
+        String missingHash = this.serveObject(missingContent);
+        this.served.remove(this.getObjectPath(missingHash));
+
+        byte[] content = "an asset the server does have".getBytes(StandardCharsets.UTF_8);
+        String hash = this.serveObject(content);
+
+        JSONObject objects = new JSONObject();
+        objects.put("test/missing", this.createObject(missingHash, missingContent.length));
+        objects.put("test/asset", this.createObject(hash, content.length));
+        Util.downloadAssets(this.createVersionManifest(objects), this.assets);
+
+        assertArrayEquals(content, FileUtils.readFileToByteArray(this.getObjectFile(hash)));
+        assertFalse(this.getObjectFile(missingHash).exists());
+        assertFalse(new File(this.assets, ".complete").exists());
+    }
+
+    private String serveObject(byte[] content) throws IOException {
+        File file = File.createTempFile("kiln-object", null);
+        try {
+            FileUtils.writeByteArrayToFile(file, content);
+            String hash = Util.sha1(file);
+            this.served.put(this.getObjectPath(hash), content);
+            return hash;
+        } finally {
+            file.delete();
+        }
+    }
+
+    private JSONObject createVersionManifest(String hash, long size) {
+        return this.createVersionManifest(new JSONObject().put("test/asset", this.createObject(hash, size)));
+    }
+
+    private JSONObject createObject(String hash, long size) {
+        JSONObject object = new JSONObject();
+        object.put("hash", hash);
+        object.put("size", size);
+        return object;
+    }
+
+    private JSONObject createVersionManifest(JSONObject objects) {
+        JSONObject index = new JSONObject();
+        index.put("objects", objects);
+        this.served.put("/index.json", index.toString().getBytes(StandardCharsets.UTF_8));
+
+        JSONObject assetIndex = new JSONObject();
+        assetIndex.put("id", "test");
+        assetIndex.put("url", this.getUrl() + "/index.json");
+        return new JSONObject().put("assetIndex", assetIndex);
+    }
+
+    private File getObjectFile(String hash) {
+        return new File(this.assets, "objects/" + hash.substring(0, 2) + "/" + hash);
+    }
+
+    private String getObjectPath(String hash) {
+        return "/objects/" + hash.substring(0, 2) + "/" + hash;
+    }
+
+    private String getUrl() {
+        return "http://localhost:" + this.server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        this.requests.add(path);
+
+        byte[] content = this.served.get(path);
+        if (content == null) {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+        }
+
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        int status = 200;
+        if (range != null) {
+            this.ranges.add(range);
+            int start = Integer.parseInt(range.substring("bytes=".length(), range.indexOf('-')));
+            if (start >= content.length) {
+                exchange.sendResponseHeaders(416, -1);
+                exchange.close();
+                return;
+            }
+            content = Arrays.copyOfRange(content, start, content.length);
+            status = 206;
+        }
+
+        exchange.sendResponseHeaders(status, content.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(content);
+        }
+    }
+
+}